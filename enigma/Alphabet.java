@@ -20,4 +20,10 @@ abstract class Alphabet {
      *  the alphabet. This is the inverse of toChar(). */
     abstract int toInt(char ch);
 
+    /** Returns the approximate number of bytes my tables occupy, or 0 if
+     *  unknown. */
+    long bytes() {
+        return 0;
+    }
+
 }
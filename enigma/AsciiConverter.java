@@ -0,0 +1,334 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Processes the input of Main as raw bytes, for machines whose alphabet
+ *  is entirely ASCII.  It reads and writes exactly what Main does from
+ *  Scanner lines, but without decoding to Strings: a 256-entry table,
+ *  precomputed from the machine's normalizer, takes each input byte
+ *  straight to its alphabet index or to what to do with it instead, and
+ *  the converted characters are written out, in groups of five, as
+ *  bytes.  Input beyond ASCII is taken to be UTF-8, so that when such
+ *  characters are passed through, each counts once towards its group.
+ *  @author Nicholas Moy
+ */
+class AsciiConverter {
+
+    /** A converter reading input from IN and writing to OUT, using
+     *  MACHINE, whose alphabet must be accepted by accepts(). */
+    AsciiConverter(Machine machine, InputStream in, OutputStream out) {
+        Alphabet alpha = machine.getAlphabet();
+        _machine = machine;
+        _in = in;
+        _out = out;
+        Normalizer norm = machine.getNormalizer();
+        _codes = new byte[1 << Byte.SIZE];
+        for (int b = 0; b < _codes.length; b++) {
+            int k = norm.classify(b < ASCII_LIMIT ? (char) b : NON_ASCII);
+            if (k >= 0) {
+                _codes[b] = (byte) k;
+            } else if (k == Normalizer.DROP) {
+                _codes[b] = SKIP;
+            } else if (k == Normalizer.ERROR) {
+                _codes[b] = BAD;
+            } else if (b >= ASCII_LIMIT && b < UTF8_LEAD) {
+                _codes[b] = CONTINUE;
+            } else {
+                _codes[b] = PASS;
+            }
+        }
+        _chars = new byte[alpha.size()];
+        for (int i = 0; i < _chars.length; i++) {
+            _chars[i] = (byte) alpha.toChar(i);
+        }
+        _newline = System.lineSeparator().getBytes();
+    }
+
+    /** Returns true iff every character of ALPHA is ASCII, and ALPHA is
+     *  small enough for its indices to fit in a byte. */
+    static boolean accepts(Alphabet alpha) {
+        if (alpha.size() > ASCII_LIMIT) {
+            return false;
+        }
+        for (int i = 0; i < alpha.size(); i++) {
+            if (alpha.toChar(i) >= ASCII_LIMIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Record checkpoints of my output in INDEX as I go. */
+    void setIndex(SeekIndex index) {
+        _index = index;
+    }
+
+    /** Take checkpoints of my progress with CHECKPOINTS as I go. */
+    void setCheckpoints(JobCheckpoint checkpoints) {
+        _checkpoints = checkpoints;
+    }
+
+    /** Continue a run from the checkpointed STATE, to which my machine
+     *  has been restored, my input and output being positioned at the
+     *  offsets STATE records. */
+    void resume(JobCheckpoint.State state) {
+        _started = true;
+        _skipNewline = state.afterCR();
+        _base = state.inputOffset();
+        _written = state.outputOffset();
+        _lastSettings = state.settings();
+    }
+
+    /** Convert all of my input. */
+    void process() throws IOException {
+        try {
+            int n;
+            while ((n = _in.read(_buf)) > 0) {
+                for (_at = 0; _at < n; _at++) {
+                    accept(_buf[_at] & 0xff);
+                }
+                _base += n;
+                convertPending();
+            }
+            if (_state != START) {
+                endLine();
+            }
+            if (!_started) {
+                throw error("First line must be setting");
+            }
+        } finally {
+            flush();
+        }
+    }
+
+    /** Process the input byte C. */
+    private void accept(int c) {
+        if (c == '\n' && _skipNewline) {
+            _skipNewline = false;
+            return;
+        }
+        _skipNewline = c == '\r';
+        if (c == '\n' || c == '\r') {
+            endLine();
+            if (_checkpoints != null && _checkpoints.due(_base + _at + 1)) {
+                flush();
+                _checkpoints.save(_base + _at + 1, _written, _skipNewline,
+                                  _lastSettings);
+            }
+        } else if (_state == MESSAGE) {
+            message(c);
+        } else if (_state == SETTINGS) {
+            _settings.write(c);
+        } else if (c == '*') {
+            _state = SETTINGS;
+            _settings.reset();
+            _settings.write(c);
+        } else if (!_started) {
+            throw error("First line must be setting");
+        } else {
+            _state = MESSAGE;
+            message(c);
+        }
+    }
+
+    /** Process the byte C of a message line. */
+    private void message(int c) {
+        byte k = _codes[c];
+        if (k >= 0) {
+            _pending[_count++] = k;
+            if (_count == _pending.length) {
+                convertPending();
+            }
+        } else if (k == BAD) {
+            throw error("Character not in alphabet");
+        } else if (k == PASS) {
+            convertPending();
+            group();
+            emit((byte) c);
+        } else if (k == CONTINUE) {
+            emit((byte) c);
+        }
+    }
+
+    /** Finish the current line. */
+    private void endLine() {
+        if (_state == SETTINGS) {
+            String settings = _settings.toString();
+            Main.setUp(_machine, settings);
+            _lastSettings = settings;
+            _started = true;
+            if (_index != null) {
+                _index.settings(settings);
+            }
+        } else if (!_started) {
+            throw error("First line must be setting");
+        } else {
+            convertPending();
+            for (byte b : _newline) {
+                emit(b);
+            }
+            _lines += 1;
+        }
+        if (_index != null) {
+            _index.lineStart(_written + _outLen, _lines);
+        }
+        _state = START;
+        _group = 0;
+    }
+
+    /** Convert the message characters read but not yet converted, and
+     *  write them out in groups of five. */
+    private void convertPending() {
+        if (_count == 0) {
+            return;
+        }
+        _machine.convert(_pending, 0, _count);
+        for (int i = 0; i < _count; i++) {
+            group();
+            emit(_chars[_pending[i]]);
+        }
+        _count = 0;
+    }
+
+    /** Count the character about to be written towards the current
+     *  group, first starting a new group if it is full. */
+    private void group() {
+        if (_group == GROUP) {
+            emit((byte) ' ');
+            _group = 1;
+        } else {
+            _group += 1;
+        }
+    }
+
+    /** Write B to the output buffer. */
+    private void emit(byte b) {
+        if (_outLen == _outBuf.length) {
+            flush();
+        }
+        _outBuf[_outLen++] = b;
+    }
+
+    /** Write out the output buffer. */
+    private void flush() {
+        try {
+            _out.write(_outBuf, 0, _outLen);
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _written += _outLen;
+        _outLen = 0;
+    }
+
+    /** Number of ASCII characters. */
+    private static final int ASCII_LIMIT = 128;
+
+    /** Size of the input and output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of characters in an output group. */
+    private static final int GROUP = 5;
+
+    /** The first byte value that starts a multi-byte UTF-8 character. */
+    private static final int UTF8_LEAD = 0xc0;
+
+    /** A character standing for all characters beyond ASCII. */
+    private static final char NON_ASCII = '\u00ff';
+
+    /** Entry of _codes for input bytes to be ignored. */
+    private static final byte SKIP = -1;
+
+    /** Entry of _codes for input bytes that are errors. */
+    private static final byte BAD = -2;
+
+    /** Entry of _codes for input bytes copied to the output. */
+    private static final byte PASS = -3;
+
+    /** Entry of _codes for input bytes continuing a UTF-8 character,
+     *  copied to the output without counting towards a group. */
+    private static final byte CONTINUE = -4;
+
+    /** States: at the start of a line, in a settings line, and in a
+     *  message line. */
+    private static final int START = 0, SETTINGS = 1, MESSAGE = 2;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** Source of input. */
+    private final InputStream _in;
+
+    /** Destination of output. */
+    private final OutputStream _out;
+
+    /** The alphabet index of each input byte, or SKIP, BAD, PASS or
+     *  CONTINUE. */
+    private final byte[] _codes;
+
+    /** The ASCII code of each character of the alphabet, by index. */
+    private final byte[] _chars;
+
+    /** The bytes ending an output line. */
+    private final byte[] _newline;
+
+    /** Input buffer. */
+    private final byte[] _buf = new byte[BUFFER_SIZE];
+
+    /** Output buffer, holding _outLen bytes. */
+    private final byte[] _outBuf = new byte[BUFFER_SIZE];
+
+    /** Number of bytes in _outBuf. */
+    private int _outLen;
+
+    /** Number of bytes written out from _outBuf. */
+    private long _written;
+
+    /** Number of output lines finished. */
+    private long _lines;
+
+    /** Where checkpoints of my output are recorded, or null if they are
+     *  not. */
+    private SeekIndex _index;
+
+    /** Takes checkpoints of my progress, or null if none are taken. */
+    private JobCheckpoint _checkpoints;
+
+    /** Input offset of the first byte of _buf. */
+    private long _base;
+
+    /** Index in _buf of the byte being processed. */
+    private int _at;
+
+    /** The settings line last applied. */
+    private String _lastSettings;
+
+    /** Indices of message characters yet to be converted, _count of
+     *  them. */
+    private final byte[] _pending = new byte[BUFFER_SIZE];
+
+    /** Number of indices in _pending. */
+    private int _count;
+
+    /** The settings line being read. */
+    private final ByteArrayOutputStream _settings =
+        new ByteArrayOutputStream();
+
+    /** Where in a line the input is: START, SETTINGS or MESSAGE. */
+    private int _state = START;
+
+    /** True iff a settings line has been processed. */
+    private boolean _started;
+
+    /** True iff the last byte was a carriage return, so that a following
+     *  newline belongs to the same line ending. */
+    private boolean _skipNewline;
+
+    /** Number of characters in the current output group. */
+    private int _group;
+}
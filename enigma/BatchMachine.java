@@ -0,0 +1,231 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A batch of Enigma machines sharing one reflector and rotor order but
+ *  each with its own rotor settings, advanced in lockstep over the same
+ *  ciphertext.  The settings are held by slot, one array entry per
+ *  machine (lane), and every step runs each slot's tables across all
+ *  lanes at once, so trial decryptions of many candidate settings share
+ *  the wiring tables in cache and score in bulk.
+ *  @author Nicholas Moy
+ */
+class BatchMachine {
+
+    /** A batch of LANES machines whose slots hold the rotors ROTORS, the
+     *  first of which is the reflector, with no plugboard. */
+    BatchMachine(Wiring[] rotors, int lanes) {
+        int n = rotors.length;
+        _size = rotors[0].size();
+        _lanes = lanes;
+        _active = lanes;
+        _forward = new int[n][];
+        _backward = new int[n][];
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            _forward[i] = rotors[i].forward();
+            _backward[i] = rotors[i].backward();
+            _notches[i] = rotors[i].notches();
+            _rotates[i] = rotors[i].rotates();
+        }
+        _posns = new int[n][lanes];
+        _chars = new int[lanes];
+        _counts = new int[lanes * _size];
+        _pairs = new long[lanes];
+        _most = new int[lanes];
+        _plugboard = new int[_size];
+        for (int i = 0; i < _size; i++) {
+            _plugboard[i] = i;
+        }
+    }
+
+    /** Returns the number of machines in the batch. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Use only machines 0 .. N - 1 from now on, leaving the rest alone,
+     *  as for a last batch of settings too small to fill every lane. */
+    void setActive(int n) {
+        if (n < 0 || n > _lanes) {
+            throw error("Bad lane count: %d", n);
+        }
+        _active = n;
+    }
+
+    /** Returns the number of machines in use. */
+    int active() {
+        return _active;
+    }
+
+    /** Set the rotors of machine LANE in slots 1 .. to POSNS[1 ..]. */
+    void setPositions(int lane, int[] posns) {
+        for (int k = 1; k < _posns.length; k++) {
+            _posns[k][lane] = posns[k];
+        }
+    }
+
+    /** Returns the setting of the rotor in slot K of machine LANE. */
+    int position(int lane, int k) {
+        return _posns[k][lane];
+    }
+
+    /** Set the plugboard of every machine to the table PLUGBOARD. */
+    void setPlugboard(int[] plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Advance every machine in use as Machine advances its rotors. */
+    void advance() {
+        int last = _posns.length - 1;
+        for (int i = 1; i < last; i++) {
+            int[] posns = _posns[i], right = _posns[i + 1];
+            boolean[] notches = _notches[i], rightNotches = _notches[i + 1];
+            boolean pushed = _rotates[i - 1], pushes = _rotates[i];
+            for (int l = 0; l < _active; l++) {
+                if ((pushed && notches[posns[l]])
+                    || (pushes && rightNotches[right[l]])) {
+                    posns[l] = next(posns[l]);
+                }
+            }
+        }
+        if (_rotates[last]) {
+            int[] posns = _posns[last];
+            for (int l = 0; l < _active; l++) {
+                posns[l] = next(posns[l]);
+            }
+        }
+    }
+
+    /** Advance every machine in use, then convert C in each, leaving the
+     *  results in CHARS, indexed by lane, which is returned. */
+    int[] convert(int c, int[] chars) {
+        advance();
+        Arrays.fill(chars, 0, _active, _plugboard[c]);
+        for (int i = _posns.length - 1; i >= 0; i--) {
+            through(_forward[i], _posns[i], chars);
+        }
+        for (int i = 1; i < _posns.length; i++) {
+            through(_backward[i], _posns[i], chars);
+        }
+        for (int l = 0; l < _active; l++) {
+            chars[l] = _plugboard[chars[l]];
+        }
+        return chars;
+    }
+
+    /** Returns the indices of coincidence of the decryptions of CIPHER
+     *  by every machine in use, indexed by lane, advancing them all.  A
+     *  lane is given the score -1 instead once its score is certain to
+     *  fall below FLOOR, and the batch stops early if that happens to all
+     *  lanes in use.  Lanes not in use score -1. */
+    double[] indexOfCoincidence(int[] cipher, double floor) {
+        int len = cipher.length;
+        double[] ans = new double[_lanes];
+        Arrays.fill(ans, _active, _lanes, -1);
+        if (len < 2) {
+            return ans;
+        }
+        double norm = (double) len * (len - 1);
+        double scaledFloor = floor * norm;
+        Arrays.fill(_counts, 0, _active * _size, 0);
+        Arrays.fill(_pairs, 0, _active, 0);
+        Arrays.fill(_most, 0, _active, 0);
+        int size = _size;
+        for (int i = 0; i < len; i++) {
+            int[] chars = convert(cipher[i], _chars);
+            for (int l = 0, base = 0; l < _active; l++, base += size) {
+                int k = base + chars[l];
+                _pairs[l] += 2 * _counts[k];
+                _counts[k] += 1;
+                _most[l] = Math.max(_most[l], _counts[k]);
+            }
+            if ((i & PRUNE_MASK) == PRUNE_MASK) {
+                long rest = len - 1 - i;
+                boolean alive = false;
+                for (int l = 0; l < _active; l++) {
+                    if (_pairs[l] + rest * (2 * _most[l] + rest - 1)
+                        < scaledFloor) {
+                        ans[l] = -1;
+                    }
+                    alive |= ans[l] == 0;
+                }
+                if (!alive) {
+                    return ans;
+                }
+            }
+        }
+        for (int l = 0; l < _active; l++) {
+            if (ans[l] == 0) {
+                ans[l] = _pairs[l] / norm;
+            }
+        }
+        return ans;
+    }
+
+    /** Returns the setting following POSN. */
+    private int next(int posn) {
+        posn += 1;
+        return posn == _size ? 0 : posn;
+    }
+
+    /** Pass CHARS[L] through the rotor table TABLE at setting POSNS[L],
+     *  for every lane L in use. */
+    private void through(int[] table, int[] posns, int[] chars) {
+        int size = _size;
+        for (int l = 0; l < _active; l++) {
+            int k = chars[l] + posns[l];
+            if (k >= size) {
+                k -= size;
+            }
+            int r = table[k] - posns[l];
+            chars[l] = r < 0 ? r + size : r;
+        }
+    }
+
+    /** Characters converted between checks of the pruning bound, less
+     *  one; a power of two less one. */
+    private static final int PRUNE_MASK = 15;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The number of machines. */
+    private final int _lanes;
+
+    /** The number of machines in use, which are the first ones. */
+    private int _active;
+
+    /** Forward tables of the rotors, by slot. */
+    private final int[][] _forward;
+
+    /** Inverse tables of the rotors, by slot. */
+    private final int[][] _backward;
+
+    /** Notch tables of the rotors, by slot. */
+    private final boolean[][] _notches;
+
+    /** Which slots hold rotors with ratchets. */
+    private final boolean[] _rotates;
+
+    /** _posns[K][L] is the setting of slot K in machine L. */
+    private final int[][] _posns;
+
+    /** The shared plugboard table. */
+    private int[] _plugboard;
+
+    /** Scratch space for the characters of each lane. */
+    private final int[] _chars;
+
+    /** Character counts of each lane, SIZE entries per lane. */
+    private final int[] _counts;
+
+    /** Coincident pairs so far in each lane, counted twice. */
+    private final long[] _pairs;
+
+    /** Largest character count so far in each lane. */
+    private final int[] _most;
+}
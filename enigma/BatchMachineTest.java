@@ -0,0 +1,110 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for BatchMachine.
+ *  @author Nicholas Moy
+ */
+public class BatchMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Tests that each lane of a BatchMachine converts as a TableMachine
+     *  with the same settings does. */
+    @Test
+    public void checkBatchMachineAgrees() {
+        Wiring[] order = Wiring.of(
+            navalMachine(NAVAL_SETTINGS).getRotors());
+        BatchMachine batch = new BatchMachine(order, 3);
+        TableMachine[] singles = new TableMachine[3];
+        for (int l = 0; l < 3; l++) {
+            int[] posns = {0, l, 21 - l, 9, 16 + l};
+            batch.setPositions(l, posns);
+            singles[l] = new TableMachine(order);
+            singles[l].setPositions(posns);
+        }
+        int[] chars = new int[3];
+        for (int i = 0; i < 1000; i++) {
+            batch.convert(i % 26, chars);
+            for (int l = 0; l < 3; l++) {
+                assertEquals(singles[l].convert(i % 26), chars[l]);
+                assertEquals(singles[l].position(2), batch.position(l, 2));
+            }
+        }
+    }
+
+    /** Tests that a BatchMachine with only some lanes in use scores
+     *  those lanes as a full batch does, and leaves the rest unscored
+     *  and unmoved. */
+    @Test
+    public void checkBatchMachineActive() {
+        Wiring[] order = Wiring.of(
+            navalMachine(NAVAL_SETTINGS).getRotors());
+        BatchMachine full = new BatchMachine(order, 3),
+            part = new BatchMachine(order, 3);
+        for (int l = 0; l < 3; l++) {
+            int[] posns = {0, l, 21 - l, 9, 16 + l};
+            full.setPositions(l, posns);
+            part.setPositions(l, posns);
+        }
+        part.setActive(2);
+        int[] cipher = new int[200];
+        for (int i = 0; i < cipher.length; i++) {
+            cipher[i] = (i * 7) % 26;
+        }
+        double[] all = full.indexOfCoincidence(cipher, 0);
+        double[] some = part.indexOfCoincidence(cipher, 0);
+        for (int l = 0; l < 2; l++) {
+            assertEquals(all[l], some[l], 1e-12);
+            assertEquals(full.position(l, 4), part.position(l, 4));
+        }
+        assertEquals(-1, some[2], 0);
+        assertEquals(18, part.position(2, 4));
+    }
+
+    /** Tests that a BatchMachine scores -1 exactly the lanes whose
+     *  scores fall below the floor, when the last check of the bound
+     *  comes at the last character, and scores the rest in full. */
+    @Test
+    public void checkBatchMachinePrunesLanes() {
+        Wiring[] order = Wiring.of(
+            navalMachine(NAVAL_SETTINGS).getRotors());
+        int[] cipher = new int[2048];
+        for (int i = 0; i < cipher.length; i++) {
+            cipher[i] = (i * i + 3 * i) % 26;
+        }
+        double[][] scores = new double[2][];
+        double floor = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            BatchMachine batch = new BatchMachine(order, 8);
+            for (int l = 0; l < 8; l++) {
+                batch.setPositions(l, new int[] {0, l, 3 * l, 9, 16 + l});
+            }
+            scores[pass] = batch.indexOfCoincidence(cipher, floor);
+            double[] sorted = scores[0].clone();
+            Arrays.sort(sorted);
+            floor = (sorted[3] + sorted[4]) / 2;
+        }
+        int dead = 0;
+        for (int l = 0; l < 8; l++) {
+            if (scores[0][l] < floor) {
+                assertEquals(-1, scores[1][l], 0);
+                dead += 1;
+            } else {
+                assertEquals(scores[0][l], scores[1][l], 1e-12);
+            }
+        }
+        assertEquals(4, dead);
+    }
+}
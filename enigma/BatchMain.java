@@ -0,0 +1,301 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** Enigma simulator for many files at once.  The configuration is read
+ *  once, and each file is then converted exactly as Main would convert
+ *  it, by its own copy of the configured machine, on a bounded pool of
+ *  threads.  A summary gives, for each file in order, whether it was
+ *  converted or the error that stopped it, and how long it took.
+ *  @author Nicholas Moy
+ */
+public final class BatchMain {
+
+    /** Convert files as specified by ARGS, which are CONFIG SOURCE
+     *  [OUTDIR], optionally preceded by options.  CONFIG names the
+     *  configuration file.  If SOURCE is a directory, every file in the
+     *  tree below it is converted to the file with the same relative
+     *  name under the directory OUTDIR.  Otherwise SOURCE is a manifest,
+     *  each of whose lines gives an input file and an output file,
+     *  separated by whitespace; empty lines and lines starting with #
+     *  are ignored.  The option --threads N converts N files at a time
+     *  (by default, one per processor), --summary FILE writes the
+     *  summary to FILE rather than the standard output, and --drop,
+     *  --pass, --strict and --no-fold are as for Main.  Exits with code
+     *  1 if any file had an error. */
+    public static void main(String... args) {
+        try {
+            if (new BatchMain(args).process()) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A batch for the arguments ARGS (see main). */
+    BatchMain(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k++) {
+            switch (args[k]) {
+            case "--drop":
+                _policy = Normalizer.Policy.DROP;
+                break;
+            case "--pass":
+                _policy = Normalizer.Policy.PASS;
+                break;
+            case "--strict":
+                _policy = Normalizer.Policy.ERROR;
+                break;
+            case "--no-fold":
+                _fold = false;
+                break;
+            case "--threads":
+                k += 1;
+                try {
+                    _threads = Integer.parseInt(args[k]);
+                } catch (NumberFormatException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    throw error("--threads needs a number");
+                }
+                if (_threads < 1) {
+                    throw error("Bad number of threads");
+                }
+                break;
+            case "--summary":
+                if (k + 1 == args.length) {
+                    throw error("No summary file given");
+                }
+                k += 1;
+                _summary = args[k];
+                break;
+            default:
+                throw error("Unknown option %s", args[k]);
+            }
+        }
+        args = Arrays.copyOfRange(args, k, args.length);
+        if (args.length < 2 || args.length > 3) {
+            throw error("Usage: java enigma.BatchMain [OPTIONS] CONFIG"
+                        + " SOURCE [OUTDIR]");
+        }
+        _config = args[0];
+        _source = new File(args[1]);
+        if (_source.isDirectory() != (args.length == 3)) {
+            throw error("An output directory is needed exactly when SOURCE"
+                        + " is a directory");
+        }
+        _outDir = args.length == 3 ? new File(args[2]) : null;
+    }
+
+    /** The outcome of converting one file. */
+    static class Result {
+
+        /** The outcome of converting INPUT to OUTPUT, which took MILLIS
+         *  milliseconds and failed with the message ERROR, or succeeded
+         *  if ERROR is null. */
+        Result(File input, File output, long millis, String error) {
+            _input = input;
+            _output = output;
+            _millis = millis;
+            _error = error;
+        }
+
+        /** Returns true iff the conversion succeeded. */
+        boolean ok() {
+            return _error == null;
+        }
+
+        @Override
+        public String toString() {
+            if (ok()) {
+                return String.format("OK\t%d ms\t%s -> %s", _millis, _input,
+                                     _output);
+            }
+            return String.format("ERROR\t%d ms\t%s: %s", _millis, _input,
+                                 _error);
+        }
+
+        /** The input and output files. */
+        private final File _input, _output;
+
+        /** Time taken. */
+        private final long _millis;
+
+        /** The error message, or null. */
+        private final String _error;
+    }
+
+    /** Convert every file in the batch and write the summary.  Returns
+     *  true iff there were no errors. */
+    private boolean process() {
+        Machine template = Main.configure(_config);
+        List<File[]> jobs = _outDir == null ? readManifest() : walk();
+        List<Result> results = convertAll(template, jobs, _threads,
+                                          _policy, _fold);
+        PrintStream summary = System.out;
+        try {
+            if (_summary != null) {
+                summary = new PrintStream(new File(_summary));
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", _summary);
+        }
+        int failures = 0;
+        for (Result r : results) {
+            summary.println(r);
+            failures += r.ok() ? 0 : 1;
+        }
+        summary.printf("%d files, %d errors%n", results.size(), failures);
+        summary.flush();
+        if (summary != System.out) {
+            summary.close();
+        }
+        return failures == 0;
+    }
+
+    /** Returns the input and output files of the jobs listed in my
+     *  manifest, in order. */
+    private List<File[]> readManifest() {
+        List<File[]> ans = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(_source.toPath())) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2) {
+                    throw error("Bad manifest line: %s", line);
+                }
+                ans.add(new File[] { new File(fields[0]),
+                                     new File(fields[1]) });
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _source);
+        }
+        return ans;
+    }
+
+    /** Returns the input and output files of the jobs for every file in
+     *  the tree under my source directory, in order of name, excluding
+     *  any under my output directory. */
+    private List<File[]> walk() {
+        Path source = _source.toPath();
+        Path out = _outDir.toPath().toAbsolutePath().normalize();
+        try (Stream<Path> files = Files.walk(source)) {
+            return files.filter(Files::isRegularFile)
+                .filter(p -> !p.toAbsolutePath().normalize().startsWith(out))
+                .sorted()
+                .map(p -> new File[] {
+                        p.toFile(),
+                        _outDir.toPath().resolve(source.relativize(p))
+                            .toFile() })
+                .collect(Collectors.toList());
+        } catch (IOException excp) {
+            throw error("could not read %s", _source);
+        }
+    }
+
+    /** Convert each of JOBS, an input file and an output file, with a
+     *  copy of TEMPLATE, THREADS at a time, treating message characters
+     *  outside the alphabet according to POLICY and folding lower case
+     *  iff FOLD.  Returns the results in the order of JOBS. */
+    static List<Result> convertAll(Machine template, List<File[]> jobs,
+                                   int threads, Normalizer.Policy policy,
+                                   boolean fold) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (File[] job : jobs) {
+                Callable<Result> task = () ->
+                    convert(template.copy(), job[0], job[1], policy, fold);
+                futures.add(pool.submit(task));
+            }
+            List<Result> ans = new ArrayList<>();
+            for (Future<Result> f : futures) {
+                ans.add(f.get());
+            }
+            return ans;
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("batch failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Returns the result of converting INPUT to OUTPUT with MACHINE, as
+     *  Main does, treating message characters outside the alphabet
+     *  according to POLICY and folding lower case iff FOLD.  Any failure,
+     *  even an unexpected exception, is reported in the result, so that
+     *  it does not stop the rest of the batch. */
+    static Result convert(Machine machine, File input, File output,
+                          Normalizer.Policy policy, boolean fold) {
+        long start = System.nanoTime();
+        String err = null;
+        File parent = output.getAbsoluteFile().getParentFile();
+        try (InputStream in =
+                 new BufferedInputStream(new FileInputStream(input))) {
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw error("could not create %s", parent);
+            }
+            try (PrintStream out = new PrintStream(
+                     new BufferedOutputStream(new FileOutputStream(output)))) {
+                new Main(in, out, policy, fold).convert(machine);
+            }
+        } catch (IOException excp) {
+            err = "I/O error: " + excp.getMessage();
+        } catch (EnigmaException excp) {
+            err = excp.getMessage();
+        } catch (RuntimeException excp) {
+            err = "uncaught exception: " + excp;
+        }
+        return new Result(input, output,
+                          (System.nanoTime() - start) / NANOS_PER_MILLI, err);
+    }
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /** What to do with message characters outside the alphabet. */
+    private Normalizer.Policy _policy = Normalizer.Policy.ERROR;
+
+    /** True iff lower case in messages is converted as upper case. */
+    private boolean _fold = true;
+
+    /** Number of files converted at a time. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** Name of the summary file, or null for the standard output. */
+    private String _summary;
+
+    /** Name of the configuration file. */
+    private final String _config;
+
+    /** The source directory or manifest. */
+    private final File _source;
+
+    /** The output directory, or null if _source is a manifest. */
+    private final File _outDir;
+}
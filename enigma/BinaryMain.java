@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Enigma simulator for arbitrary binary data.  The configuration must
+ *  have an alphabet of exactly 256 characters, and each byte of input is
+ *  taken as the index of a character: byte 0 is the first character of
+ *  the alphabet and byte 255 the last.  The input is converted as one
+ *  unbroken message, with no character decoding, line handling or
+ *  grouping, and the converted bytes are written out as they are.
+ *  testing/binary/bytes.conf is such a configuration, over the
+ *  characters U+0100 .. U+01FF, and "make -C testing binary-check"
+ *  round-trips data through it.  Since those characters are not ASCII,
+ *  the configuration and settings must be given in the platform's
+ *  encoding, as they are in a UTF-8 locale such as C.UTF-8.
+ *  @author Nicholas Moy
+ */
+public final class BinaryMain {
+
+    /** Convert a file as specified by ARGS, where 2 <= ARGS.length <= 4.
+     *  ARGS[0] is the name of a configuration file and ARGS[1] a settings
+     *  line, such as "* B I II III AAA (AB)".  ARGS[2] and ARGS[3], when
+     *  present, name the input and output files; otherwise the standard
+     *  input and output are used. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4) {
+                throw error("Usage: java enigma.BinaryMain CONFIG SETTINGS"
+                            + " [INPUT [OUTPUT]]");
+            }
+            Machine machine = Main.configure(args[0]);
+            if (machine.getAlphabet().size() != Machine.BYTE_SYMBOLS) {
+                throw error("Binary mode needs an alphabet of %d characters",
+                            Machine.BYTE_SYMBOLS);
+            }
+            Main.setUp(machine, args[1]);
+            try (ReadableByteChannel in = args.length > 2
+                     ? new FileInputStream(args[2]).getChannel()
+                     : Channels.newChannel(System.in);
+                 WritableByteChannel out = args.length > 3
+                     ? new FileOutputStream(args[3]).getChannel()
+                     : Channels.newChannel(System.out)) {
+                convert(machine, in, out);
+            } catch (IOException excp) {
+                throw error("I/O error: %s", excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Convert everything read from IN with MACHINE, writing the results
+     *  to OUT. */
+    static void convert(Machine machine, ReadableByteChannel in,
+                        WritableByteChannel out) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (in.read(buf) >= 0) {
+            convert(machine, buf);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /** Convert in place the bytes of BUF from its start to its position
+     *  with MACHINE, and flip it, leaving them ready to be written. */
+    static void convert(Machine machine, ByteBuffer buf) {
+        buf.flip();
+        machine.convert(buf.array(), buf.arrayOffset(),
+                        buf.arrayOffset() + buf.limit());
+    }
+
+    /** Size of the buffer through which data is converted. */
+    private static final int BUFFER_SIZE = 1 << 16;
+}
@@ -11,11 +11,12 @@ class CharacterRange extends Alphabet {
     /** An alphabet consisting of all characters between FIRST and LAST,
      *  inclusive. */
     CharacterRange(char first, char last) {
-        String ans = "";
+        StringBuilder ans = new StringBuilder();
         for (int i = 0; i < last - first + 1; i++) {
-            ans = ans + (char) (first + i);
+            ans.append((char) (first + i));
         }
-        _alph = ans;
+        _alph = ans.toString();
+        _index = index();
     }
 
     /** An alphabet consisting of all characters in s.
@@ -30,6 +31,25 @@ class CharacterRange extends Alphabet {
             throw error("Bad alphabet characters");
         }
         _alph = s;
+        _index = index();
+    }
+
+    /** Returns the table of the characters from _min to _max, whose
+     *  entry for character C is one more than C's index in _alph, or 0
+     *  if C is not in _alph.  Sets _min and _max. */
+    private IndexTable index() {
+        _min = Character.MAX_VALUE;
+        _max = 0;
+        for (int i = 0; i < _alph.length(); i++) {
+            _min = (char) Math.min(_min, _alph.charAt(i));
+            _max = (char) Math.max(_max, _alph.charAt(i));
+        }
+        int span = Math.max(_max - _min + 1, 0);
+        IndexTable ans = IndexTable.of(span, _alph.length() + 1);
+        for (int i = _alph.length() - 1; i >= 0; i--) {
+            ans.set(_alph.charAt(i) - _min, i + 1);
+        }
+        return ans;
     }
 
     @Override
@@ -39,7 +59,7 @@ class CharacterRange extends Alphabet {
 
     @Override
     boolean contains(char ch) {
-        return _alph.indexOf(ch) != -1;
+        return ch >= _min && ch <= _max && _index.get(ch - _min) != 0;
     }
 
     @Override
@@ -52,13 +72,27 @@ class CharacterRange extends Alphabet {
 
     @Override
     int toInt(char ch) {
-        if (_alph.indexOf(ch) == -1) {
+        if (!contains(ch)) {
             throw error("Character not in alphabet");
         }
-        return _alph.indexOf(ch);
+        return _index.get(ch - _min) - 1;
+    }
+
+    @Override
+    long bytes() {
+        return _index.bytes() + (long) _alph.length() * Character.BYTES;
     }
 
     /** String containing the characters of this Alphabet. */
     private String _alph;
 
+    /** Indices of the characters _min .. _max, plus one (see index()). */
+    private IndexTable _index;
+
+    /** The smallest character in _alph. */
+    private char _min;
+
+    /** The largest character in _alph. */
+    private char _max;
+
 }
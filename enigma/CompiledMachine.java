@@ -0,0 +1,52 @@
+package enigma;
+
+import java.util.List;
+
+/** An Enigma machine whose rotor set is compiled into its code.  Each
+ *  subclass is generated by MachineCompiler for one reflector and rotor
+ *  order: the number of slots, which slots have ratchets and the double
+ *  stepping they imply are written out as straight-line code, and the
+ *  wiring and notches are constant arrays.  Only the rotor settings and
+ *  plugboard vary.  This is the compiled ConversionEngine of Machine,
+ *  used only when a program asks for it with Machine.setEngine, which
+ *  Main does not: compiling takes about a second, and the result has
+ *  not been measured converting faster than a FlatMachine.
+ *  @author Nicholas Moy
+ */
+abstract class CompiledMachine implements ConversionEngine {
+
+    /** Set the rotors in slots 1 .. to POSNS[1 ..]. */
+    abstract void setPositions(int[] posns);
+
+    /** Copy my rotor settings into POSNS, which is returned. */
+    abstract int[] positions(int[] posns);
+
+    @Override
+    public void convert(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            data[i] = (byte) convert(data[i] & 0xff);
+        }
+    }
+
+    @Override
+    public void setPositions(List<Rotor> rotors) {
+        int[] posns = new int[rotors.size()];
+        for (int k = 1; k < posns.length; k++) {
+            posns[k] = rotors.get(k).setting();
+        }
+        setPositions(posns);
+    }
+
+    /** Set my plugboard to the table PLUGBOARD (not copied). */
+    void setPlugboard(int[] plugboard) {
+        _plugboard = plugboard;
+    }
+
+    @Override
+    public void setPlugboard(Permutation plugboard) {
+        setPlugboard(Wiring.table(plugboard));
+    }
+
+    /** My plugboard table. */
+    protected int[] _plugboard;
+}
@@ -0,0 +1,53 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for CompiledMachine and MachineCompiler.
+ *  @author Nicholas Moy
+ */
+public class CompiledMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Tests that a compiled machine converts as Machine does. */
+    @Test
+    public void checkCompiledMachineAgrees() {
+        Machine m = navalMachine(NAVAL_SETTINGS);
+        m.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        CompiledMachine c = MachineCompiler.compile(m);
+        int[] posns = new int[5];
+        for (int i = 0; i < 2000; i++) {
+            int x = (i * 11) % 26;
+            assertEquals(msg("compiled", "character %d", i),
+                         m.convert(x), c.convert(x));
+            c.positions(posns);
+            for (int k = 1; k < 5; k++) {
+                assertEquals(m.getRotors().get(k).setting(), posns[k]);
+            }
+        }
+    }
+
+    /** Tests that a rotor set is compiled once, into machines that step
+     *  independently. */
+    @Test
+    public void checkCompiledMachineCached() {
+        Machine m = navalMachine(NAVAL_SETTINGS);
+        CompiledMachine a = MachineCompiler.compile(m),
+            b = MachineCompiler.compile(m);
+        assertTrue(a.getClass() == b.getClass());
+        for (int i = 0; i < 30; i++) {
+            a.convert(i % 26);
+        }
+        assertNotEquals(a.position(4), b.position(4));
+        assertEquals(m.getRotors().get(4).setting(), b.position(4));
+    }
+}
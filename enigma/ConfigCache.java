@@ -0,0 +1,90 @@
+package enigma;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The machines of the configuration files named in an input that mixes
+ *  messages for several configurations.  Each configuration file is
+ *  read the first time it is named, and its machine kept for when it is
+ *  named again, up to a fixed number of machines; beyond that, the
+ *  machine least recently named is dropped, to be read again if it is
+ *  named again.  Names are taken relative to a base directory.
+ *  @author Nicholas Moy
+ */
+class ConfigCache {
+
+    /** A cache of at most CAPACITY machines, whose configuration files
+     *  are named relative to the directory BASE.  Each machine treats
+     *  message characters outside its alphabet according to POLICY and
+     *  folds lower case iff FOLD. */
+    ConfigCache(int capacity, Path base, Normalizer.Policy policy,
+                boolean fold) {
+        _capacity = capacity;
+        _base = base;
+        _policy = policy;
+        _fold = fold;
+        _machines = new LinkedHashMap<>(capacity + 1, 1.0f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Machine> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Returns the machine configured by the configuration file NAME,
+     *  reading the file unless its machine is cached. */
+    Machine get(String name) {
+        Path key = key(name);
+        Machine ans = _machines.get(key);
+        if (ans == null) {
+            ans = Main.configure(key.toString());
+            ans.setNormalizer(new Normalizer(ans.getAlphabet(), _policy,
+                                             _fold));
+            _loads += 1;
+            _machines.put(key, ans);
+        }
+        return ans;
+    }
+
+    /** Cache MACHINE as the machine configured by the configuration file
+     *  NAME. */
+    void put(String name, Machine machine) {
+        _machines.put(key(name), machine);
+    }
+
+    /** Returns the number of configuration files read so far. */
+    int loads() {
+        return _loads;
+    }
+
+    /** Returns the number of machines cached. */
+    int size() {
+        return _machines.size();
+    }
+
+    /** Returns the key of the configuration file NAME. */
+    private Path key(String name) {
+        return _base.resolve(Paths.get(name)).toAbsolutePath().normalize();
+    }
+
+    /** The largest number of machines cached. */
+    private final int _capacity;
+
+    /** The directory relative to which configuration files are named. */
+    private final Path _base;
+
+    /** What the machines do with characters outside their alphabets. */
+    private final Normalizer.Policy _policy;
+
+    /** True iff the machines fold lower case. */
+    private final boolean _fold;
+
+    /** The cached machines, by path of configuration file, least
+     *  recently used first. */
+    private final LinkedHashMap<Path, Machine> _machines;
+
+    /** Number of configuration files read. */
+    private int _loads;
+}
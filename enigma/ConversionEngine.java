@@ -0,0 +1,49 @@
+package enigma;
+
+import java.util.List;
+
+/** The part of a Machine that converts characters, given as indices in
+ *  its alphabet, once its rotors and plugboard are in place.  A Machine
+ *  chooses an engine each time its rotors change, and hands it any new
+ *  plugboard: an InterpretiveEngine, which works on the Rotor and
+ *  Permutation objects themselves and so costs nothing to start, or a
+ *  FlatMachine, which first copies them into one table and then
+ *  converts each character several times faster.  A CompiledMachine,
+ *  generated and compiled for the rotors, may also be asked for.  Any
+ *  way, the rotor settings are kept by the engine while it converts, and
+ *  copied back to the rotors only when something reads them.
+ *  @author Nicholas Moy
+ */
+interface ConversionEngine {
+
+    /** The engines a Machine may use. */
+    enum Kind {
+        /** Choose by the shape of the machine and the number of
+         *  characters to convert. */
+        AUTO,
+        /** Always use an InterpretiveEngine. */
+        INTERPRETIVE,
+        /** Always use a FlatMachine. */
+        TABLE,
+        /** Always use a CompiledMachine, which needs a full JDK. */
+        COMPILED
+    }
+
+    /** Returns the result of converting C, after first advancing the
+     *  machine. */
+    int convert(int c);
+
+    /** Convert DATA[FROM .. TO - 1] in place, each byte being taken as
+     *  an unsigned index into the alphabet. */
+    void convert(byte[] data, int from, int to);
+
+    /** Set the rotors in slots 1 .. to the settings of ROTORS[1 ..], the
+     *  rotors of my machine. */
+    void setPositions(List<Rotor> rotors);
+
+    /** Returns the setting of the rotor in slot K. */
+    int position(int k);
+
+    /** Set my plugboard to PLUGBOARD. */
+    void setPlugboard(Permutation plugboard);
+}
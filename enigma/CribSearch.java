@@ -0,0 +1,282 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Known-plaintext search in the manner of the Turing Bombe.  A crib
+ *  (suspected plaintext) placed against the ciphertext yields a menu of
+ *  letter pairs, each joined through the scrambler (the machine without
+ *  its plugboard) at a known step.  For every rotor order and setting,
+ *  each guess at the plugboard partner of the menu's best-connected
+ *  letter is followed around the menu; loops in the menu soon force a
+ *  letter to have two partners, which refutes the guess.  The settings
+ *  and guesses that survive are the stops.
+ *  @author Nicholas Moy
+ */
+public final class CribSearch {
+
+    /** Search the ciphertext in the file ARGS[1] for the crib ARGS[2],
+     *  using the rotors of the configuration file ARGS[0], and print the
+     *  stops.  If ARGS[3] is present, the crib is placed at that offset
+     *  into the ciphertext only; otherwise it is tried at every offset
+     *  where it could fit. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Only 3 or 4 command-line arguments allowed");
+            }
+            Machine machine = Main.configure(args[0]);
+            Alphabet alpha = machine.getAlphabet();
+            int[] cipher = RotorSearch.readCiphertext(args[1], alpha);
+            String cribText = args[2].replaceAll("\\s", "").toUpperCase();
+            int[] crib = new int[cribText.length()];
+            for (int i = 0; i < crib.length; i++) {
+                crib[i] = alpha.toInt(cribText.charAt(i));
+            }
+            CribSearch search = new CribSearch(machine, cipher, crib);
+            List<Integer> offsets = search.offsets();
+            if (args.length > 3) {
+                int offset = parseOffset(args[3]);
+                if (!offsets.contains(offset)) {
+                    throw error("Crib cannot be placed at offset %d",
+                                offset);
+                }
+                offsets = Collections.singletonList(offset);
+            }
+            for (int offset : offsets) {
+                for (String stop : search.search(offset)) {
+                    System.out.printf("%d: %s%n", offset, stop);
+                }
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search for CRIB in CIPHER (both as alphabet indices) over the
+     *  rotor catalog of MACHINE. */
+    CribSearch(Machine machine, int[] cipher, int[] crib) {
+        if (crib.length == 0) {
+            throw error("Crib is empty");
+        }
+        _alphabet = machine.getAlphabet();
+        _orders = RotorSearch.orders(machine);
+        _cipher = cipher;
+        _crib = crib;
+        _selfFree = true;
+        for (Wiring[] order : _orders) {
+            int[] refl = order[0].forward();
+            for (int i = 0; i < refl.length; i++) {
+                _selfFree &= refl[i] != i;
+            }
+        }
+    }
+
+    /** Returns the offsets into the ciphertext at which the crib fits.
+     *  When no reflector has a fixed point, no character encrypts to
+     *  itself, and offsets that would require one are excluded. */
+    List<Integer> offsets() {
+        List<Integer> ans = new ArrayList<>();
+        for (int k = 0; k + _crib.length <= _cipher.length; k++) {
+            boolean fits = true;
+            for (int i = 0; _selfFree && i < _crib.length; i++) {
+                fits &= _crib[i] != _cipher[k + i];
+            }
+            if (fits) {
+                ans.add(k);
+            }
+        }
+        return ans;
+    }
+
+    /** Returns the stops for the crib placed at OFFSET, in order of rotor
+     *  order and setting, each as a settings line whose plugboard holds
+     *  the pairs implied by the menu. */
+    List<String> search(int offset) {
+        Menu menu = new Menu(offset);
+        int size = _alphabet.size();
+        int perOrder = _orders.get(0).length > 1 ? size : 1;
+        List<List<String>> found = new ArrayList<>();
+        for (int i = 0; i < _orders.size() * perOrder; i++) {
+            found.add(null);
+        }
+        IntStream.range(0, found.size()).parallel().forEach(unit ->
+            found.set(unit, searchUnit(menu, unit / perOrder,
+                                       unit % perOrder)));
+        List<String> ans = new ArrayList<>();
+        for (List<String> stops : found) {
+            ans.addAll(stops);
+        }
+        return ans;
+    }
+
+    /** Returns the stops of MENU among the settings of rotor order
+     *  ORDERNUM whose leftmost rotor is at setting LEAD. */
+    private List<String> searchUnit(Menu menu, int orderNum, int lead) {
+        Wiring[] order = _orders.get(orderNum);
+        TableMachine machine = new TableMachine(order);
+        int size = _alphabet.size();
+        int[][] scrambler = new int[_crib.length][size];
+        int[] steckers = new int[size];
+        int[] pending = new int[size];
+        int[] posns = new int[order.length];
+        List<String> ans = new ArrayList<>();
+        if (order.length > 1) {
+            posns[1] = lead;
+        }
+        do {
+            machine.setPositions(posns);
+            for (int i = 0; i < menu.offset(); i++) {
+                machine.advance();
+            }
+            for (int[] step : scrambler) {
+                machine.advance();
+                for (int x = 0; x < size; x++) {
+                    step[x] = machine.map(x);
+                }
+            }
+            for (int guess = 0; guess < size; guess++) {
+                if (menu.consistent(scrambler, guess, steckers, pending)) {
+                    ans.add(RotorSearch.settingsLine(order, posns, _alphabet)
+                            + PlugboardSearch.cycles(steckers, _alphabet));
+                }
+            }
+        } while (RotorSearch.nextSettings(posns, size));
+        return ans;
+    }
+
+    /** Returns the offset denoted by S. */
+    private static int parseOffset(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("Bad crib offset: %s", s);
+        }
+    }
+
+    /** The letter pairs formed by the crib at a particular offset. */
+    private class Menu {
+
+        /** The menu of the crib placed at OFFSET. */
+        Menu(int offset) {
+            int size = _alphabet.size();
+            int[] degree = new int[size];
+            for (int i = 0; i < _crib.length; i++) {
+                degree[_crib[i]] += 1;
+                degree[_cipher[offset + i]] += 1;
+            }
+            _offset = offset;
+            _others = new int[size][];
+            _steps = new int[size][];
+            int best = 0;
+            for (int a = 0; a < size; a++) {
+                best = degree[a] > degree[best] ? a : best;
+            }
+            _test = best;
+            for (int a = 0; a < size; a++) {
+                _others[a] = new int[degree[a]];
+                _steps[a] = new int[degree[a]];
+                degree[a] = 0;
+            }
+            for (int i = 0; i < _crib.length; i++) {
+                link(_crib[i], _cipher[offset + i], i, degree);
+                link(_cipher[offset + i], _crib[i], i, degree);
+            }
+        }
+
+        /** Record that A is joined to B through the scrambler at crib
+         *  position STEP, using FILLED to count the links of A so far. */
+        private void link(int a, int b, int step, int[] filled) {
+            _others[a][filled[a]] = b;
+            _steps[a][filled[a]] = step;
+            filled[a] += 1;
+        }
+
+        /** Returns my offset into the ciphertext. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Returns true iff partnering my test letter with GUESS leads to
+         *  no contradiction around the menu, given the scrambler tables
+         *  SCRAMBLER at each crib position.  Leaves the implied partners
+         *  in STECKERS, using PENDING as scratch space. */
+        boolean consistent(int[][] scrambler, int guess, int[] steckers,
+                           int[] pending) {
+            Arrays.fill(steckers, -1);
+            int top = 0;
+            if (!pair(_test, guess, steckers)) {
+                return false;
+            }
+            pending[top++] = _test;
+            if (guess != _test) {
+                pending[top++] = guess;
+            }
+            while (top > 0) {
+                int a = pending[--top];
+                int partner = steckers[a];
+                for (int e = 0; e < _others[a].length; e++) {
+                    int b = _others[a][e];
+                    int x = scrambler[_steps[a][e]][partner];
+                    if (steckers[b] == x) {
+                        continue;
+                    }
+                    if (!pair(b, x, steckers)) {
+                        return false;
+                    }
+                    pending[top++] = b;
+                    if (x != b) {
+                        pending[top++] = x;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Partner A with X in STECKERS, returning false if either
+         *  already has a different partner. */
+        private boolean pair(int a, int x, int[] steckers) {
+            if ((steckers[a] != -1 && steckers[a] != x)
+                || (steckers[x] != -1 && steckers[x] != a)) {
+                return false;
+            }
+            steckers[a] = x;
+            steckers[x] = a;
+            return true;
+        }
+
+        /** Offset of the crib into the ciphertext. */
+        private final int _offset;
+
+        /** The letter with the most links, whose partner is guessed. */
+        private final int _test;
+
+        /** _others[A] are the letters joined to A. */
+        private final int[][] _others;
+
+        /** _steps[A][E] is the crib position of the link _others[A][E]. */
+        private final int[][] _steps;
+    }
+
+    /** Alphabet of the machine searched. */
+    private final Alphabet _alphabet;
+
+    /** Reflector and rotor orders searched. */
+    private final List<Wiring[]> _orders;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** True iff no reflector in the catalog has a fixed point. */
+    private boolean _selfFree;
+}
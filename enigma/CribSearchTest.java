@@ -0,0 +1,64 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for CribSearch.
+ *  @author Nicholas Moy
+ */
+public class CribSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Returns MSG as indices into UPPER. */
+    private int[] indices(String msg) {
+        int[] ans = new int[msg.length()];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = UPPER.toInt(msg.charAt(i));
+        }
+        return ans;
+    }
+
+    /* ***** TESTS ***** */
+
+    /** Tests that offsets requiring a letter to encrypt to itself are
+     *  rejected. */
+    @Test
+    public void checkOffsets() {
+        Machine m = navalMachine(3, 2, "B", "I", "II", "III");
+        CribSearch search = new CribSearch(m, indices("ABCDEFG"),
+                                           indices("XC"));
+        List<Integer> offsets = search.offsets();
+        assertFalse(offsets.contains(1));
+        assertTrue(offsets.contains(2));
+        assertTrue(offsets.contains(0));
+        assertTrue(offsets.contains(5));
+        assertEquals(5, offsets.size());
+    }
+
+    /** Tests that the crib finds the settings and plugboard pair of a
+     *  message. */
+    @Test
+    public void checkStop() {
+        Machine m = navalMachine(3, 2, "B", "I", "II", "III");
+        Main.setUp(m, "* B II III QE (AT) (EZ)");
+        String plain = "XXWETTERVORHERSAGEBISCAYA";
+        String cipher = m.convert(plain);
+        CribSearch search = new CribSearch(m, indices(cipher),
+                                           indices("WETTERVORHERSAGE"));
+        assertTrue(search.offsets().contains(2));
+        List<String> stops = search.search(2);
+        assertTrue(stops.contains("* B II III QE (AT) (EZ)"));
+        assertTrue(stops.size() < 5);
+    }
+}
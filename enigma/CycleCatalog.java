@@ -0,0 +1,410 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the cycle structures (Rejewski's characteristics) of the
+ *  machine at every rotor order and start position.  If P1 .. P6 are
+ *  the permutations the machine applies to the first six characters from
+ *  a start position, the characteristic of that position is the list of
+ *  cycle lengths of each of the products P4 P1, P5 P2 and P6 P3.  Cycle
+ *  structure survives conjugation, so the plugboard does not affect it.
+ *
+ *  The catalog file holds a header naming the rotor orders, followed by
+ *  one 8-byte record per position, sorted: the high half is a hash of
+ *  the characteristic and the low half the position's number.  Lookups
+ *  binary-search the records on disk and then confirm each match by
+ *  recomputing its characteristic.
+ *
+ *  The positions are cataloged in chunks of at most CHUNK, each rotor
+ *  order's positions being split among as many chunks as needed, so
+ *  that even one rotor order over a large alphabet keeps every thread
+ *  busy.  Each chunk's records are sorted and written to a run file of
+ *  their own, and the runs then merged into the catalog, so that only
+ *  the chunks in progress are held in memory.
+ *  @author Nicholas Moy
+ */
+public final class CycleCatalog {
+
+    /** Depending on ARGS[0]:
+     *    build CONFIG CATALOG
+     *        writes the catalog of configuration file CONFIG to the file
+     *        CATALOG;
+     *    lookup CONFIG CATALOG CHARACTERISTIC
+     *        prints the settings lines of all positions in CATALOG with
+     *        CHARACTERISTIC;
+     *    show CONFIG SETTINGS
+     *        prints the characteristic of the settings line SETTINGS.
+     *  A characteristic is written as three lists of cycle lengths
+     *  separated by slashes, as in "13 13/12 12 1 1/10 10 3 3". */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Too few command-line arguments");
+            }
+            Machine machine = Main.configure(args[1]);
+            if (args[0].equals("build") && args.length == 3) {
+                new CycleCatalog(machine).write(args[2]);
+            } else if (args[0].equals("lookup") && args.length == 4) {
+                for (String line : new CycleCatalog(machine)
+                         .lookup(args[2], parse(args[3]))) {
+                    System.out.println(line);
+                }
+            } else if (args[0].equals("show") && args.length == 3) {
+                Main.setUp(machine, args[2]);
+                System.out.println(format(characteristic(
+                    TableMachine.of(machine), new int[PERIOD][])));
+            } else {
+                throw error("Bad command-line arguments");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A catalog for the rotor catalog of MACHINE. */
+    CycleCatalog(Machine machine) {
+        _alphabet = machine.getAlphabet();
+        _orders = RotorSearch.orders(machine);
+        if (_orders.isEmpty()) {
+            throw error("No rotor orders fit this machine");
+        }
+        double positions = Math.pow(_alphabet.size(),
+                                    _orders.get(0).length - 1);
+        if (positions * _orders.size() > MAX_RECORDS) {
+            throw error("Too many positions to catalog");
+        }
+        _positions = (int) positions;
+    }
+
+    /** Compute the records of every position in parallel, a chunk at a
+     *  time, and write them, sorted, to the file named NAME. */
+    void write(String name) {
+        write(name, CHUNK);
+    }
+
+    /** Write the catalog to the file named NAME as for write(NAME), in
+     *  chunks of at most CHUNK positions. */
+    void write(String name, int chunk) {
+        int perOrder = (_positions + chunk - 1) / chunk;
+        int chunks = perOrder * _orders.size();
+        File[] runs = new File[chunks];
+        for (int c = 0; c < chunks; c++) {
+            runs[c] = new File(name + ".run" + c);
+        }
+        try {
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                int from = (c % perOrder) * chunk;
+                writeRun(runs[c], c / perOrder, from,
+                         Math.min(from + chunk, _positions));
+            });
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(name)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(_alphabet.size());
+                out.writeInt(_orders.get(0).length);
+                out.writeInt(_orders.size());
+                for (Wiring[] order : _orders) {
+                    for (Wiring w : order) {
+                        out.writeUTF(w.name());
+                    }
+                }
+                out.writeLong((long) _positions * _orders.size());
+                merge(runs, out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /** Write the sorted records of positions FROM .. TO - 1 of rotor
+     *  order number ORDER to the file RUN. */
+    private void writeRun(File run, int order, int from, int to) {
+        long[] records = new long[to - from];
+        fill(order, from, records);
+        Arrays.sort(records);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (long r : records) {
+                out.writeLong(r);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", run);
+        }
+    }
+
+    /** Write to OUT the records of the sorted files RUNS, merged in
+     *  order. */
+    private static void merge(File[] runs, DataOutputStream out)
+        throws IOException {
+        DataInputStream[] ins = new DataInputStream[runs.length];
+        long[] heads = new long[runs.length];
+        long[] left = new long[runs.length];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            Math.max(1, runs.length),
+            (a, b) -> Long.compare(heads[a], heads[b]));
+        try {
+            for (int k = 0; k < runs.length; k++) {
+                ins[k] = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(runs[k])));
+                left[k] = runs[k].length() / Long.BYTES;
+                if (left[k] > 0) {
+                    heads[k] = ins[k].readLong();
+                    left[k] -= 1;
+                    queue.add(k);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int k = queue.poll();
+                out.writeLong(heads[k]);
+                if (left[k] > 0) {
+                    heads[k] = ins[k].readLong();
+                    left[k] -= 1;
+                    queue.add(k);
+                }
+            }
+        } finally {
+            for (DataInputStream in : ins) {
+                if (in != null) {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /** Returns the settings lines of the positions whose characteristic
+     *  is CHR, according to the catalog file NAME. */
+    List<String> lookup(String name, int[][] chr) {
+        long start;
+        long count;
+        try (FileInputStream file = new FileInputStream(name)) {
+            DataInputStream in = new DataInputStream(file);
+            readHeader(in);
+            count = in.readLong();
+            start = file.getChannel().position();
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+        long key = (long) hash(chr) << 32;
+        List<String> ans = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(name, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+            long lo = 0, hi = count;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (record(channel, buf, start, mid) < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int[][] scratch = new int[PERIOD][];
+            for (long i = lo; i < count; i++) {
+                long r = record(channel, buf, start, i);
+                if ((r >>> 32) != (key >>> 32)) {
+                    break;
+                }
+                int id = (int) r;
+                Wiring[] order = _orders.get(id / _positions);
+                int[] posns = positions(id % _positions, order.length);
+                TableMachine machine = new TableMachine(order);
+                machine.setPositions(posns);
+                if (Arrays.deepEquals(characteristic(machine, scratch),
+                                      chr)) {
+                    ans.add(RotorSearch.settingsLine(order, posns,
+                                                     _alphabet));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+        return ans;
+    }
+
+    /** Read the header of the catalog on IN, checking that it matches
+     *  my rotor orders. */
+    private void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw error("Not a cycle catalog");
+        }
+        boolean matches = in.readInt() == _alphabet.size();
+        matches &= in.readInt() == _orders.get(0).length;
+        matches &= in.readInt() == _orders.size();
+        for (int k = 0; matches && k < _orders.size(); k++) {
+            for (Wiring w : _orders.get(k)) {
+                matches &= in.readUTF().equals(w.name());
+            }
+        }
+        if (!matches) {
+            throw error("Catalog does not match configuration");
+        }
+    }
+
+    /** Returns record number I of the records starting at byte START of
+     *  CHANNEL, using BUF as a buffer. */
+    private static long record(FileChannel channel, ByteBuffer buf,
+                               long start, long i) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, start + i * Long.BYTES + buf.position())
+                < 0) {
+                throw error("Catalog truncated");
+            }
+        }
+        return buf.getLong(0);
+    }
+
+    /** Place the records of positions FROM .. FROM + RECORDS.length - 1
+     *  of rotor order number ORDER in RECORDS. */
+    private void fill(int order, int from, long[] records) {
+        TableMachine machine = new TableMachine(_orders.get(order));
+        int n = _orders.get(order).length;
+        int[][] scratch = new int[PERIOD][];
+        for (int i = 0; i < records.length; i++) {
+            int id = order * _positions + from + i;
+            machine.setPositions(positions(from + i, n));
+            records[i] = ((long) hash(characteristic(machine, scratch))
+                          << 32) | id;
+        }
+    }
+
+    /** Returns the rotor settings numbered P for a machine with N slots,
+     *  the rightmost rotor's setting being the least significant digit. */
+    private int[] positions(int p, int n) {
+        int[] ans = new int[n];
+        for (int k = n - 1; k > 0; k--) {
+            ans[k] = p % _alphabet.size();
+            p /= _alphabet.size();
+        }
+        return ans;
+    }
+
+    /** Returns the characteristic of MACHINE at its current settings,
+     *  which are advanced, using TABLES as scratch space. */
+    static int[][] characteristic(TableMachine machine, int[][] tables) {
+        int size = machine.size();
+        for (int s = 0; s < PERIOD; s++) {
+            machine.advance();
+            if (tables[s] == null) {
+                tables[s] = new int[size];
+            }
+            for (int x = 0; x < size; x++) {
+                tables[s][x] = machine.map(x);
+            }
+        }
+        int half = PERIOD / 2;
+        int[][] ans = new int[half][];
+        boolean[] seen = new boolean[size];
+        int[] lengths = new int[size];
+        for (int s = 0; s < half; s++) {
+            Arrays.fill(seen, false);
+            int cycles = 0;
+            for (int x = 0; x < size; x++) {
+                int len = 0;
+                for (int y = x; !seen[y]; y = tables[s + half][tables[s][y]]) {
+                    seen[y] = true;
+                    len += 1;
+                }
+                if (len > 0) {
+                    lengths[cycles++] = len;
+                }
+            }
+            Arrays.sort(lengths, 0, cycles);
+            ans[s] = new int[cycles];
+            for (int i = 0; i < cycles; i++) {
+                ans[s][i] = lengths[cycles - 1 - i];
+            }
+        }
+        return ans;
+    }
+
+    /** Returns a hash of the characteristic CHR. */
+    static int hash(int[][] chr) {
+        return Arrays.deepHashCode(chr);
+    }
+
+    /** Returns the characteristic written as S. */
+    static int[][] parse(String s) {
+        String[] groups = s.trim().split("\\s*/\\s*");
+        if (groups.length != PERIOD / 2) {
+            throw error("Bad characteristic: %s", s);
+        }
+        int[][] ans = new int[groups.length][];
+        try {
+            for (int i = 0; i < groups.length; i++) {
+                String[] lens = groups[i].split("\\s+");
+                ans[i] = new int[lens.length];
+                for (int j = 0; j < lens.length; j++) {
+                    ans[i][j] = Integer.parseInt(lens[j]);
+                }
+                Arrays.sort(ans[i]);
+                for (int j = 0; j < lens.length / 2; j++) {
+                    int t = ans[i][j];
+                    ans[i][j] = ans[i][lens.length - 1 - j];
+                    ans[i][lens.length - 1 - j] = t;
+                }
+            }
+        } catch (NumberFormatException excp) {
+            throw error("Bad characteristic: %s", s);
+        }
+        return ans;
+    }
+
+    /** Returns the characteristic CHR written as parse() reads it. */
+    static String format(int[][] chr) {
+        StringBuilder ans = new StringBuilder();
+        for (int[] group : chr) {
+            if (ans.length() > 0) {
+                ans.append('/');
+            }
+            for (int i = 0; i < group.length; i++) {
+                ans.append(i == 0 ? "" : " ").append(group[i]);
+            }
+        }
+        return ans.toString();
+    }
+
+    /** Number of characters whose permutations form a characteristic. */
+    static final int PERIOD = 6;
+
+    /** Most positions cataloged in one chunk. */
+    static final int CHUNK = 1 << 20;
+
+    /** Identifies catalog files. */
+    private static final int MAGIC = 0x454e4343;
+
+    /** Most positions a catalog may hold. */
+    private static final double MAX_RECORDS = 1 << 30;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Reflector and rotor orders cataloged. */
+    private final List<Wiring[]> _orders;
+
+    /** Number of start positions of each rotor order. */
+    private final int _positions;
+}
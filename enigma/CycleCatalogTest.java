@@ -0,0 +1,154 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for CycleCatalog.
+ *  @author Nicholas Moy
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Returns the characteristic of M with rotors R2, Y and X at
+     *  SETTING, computed a character at a time with Machine.convert. */
+    private int[][] slowCharacteristic(Machine m, String setting) {
+        int size = m.getAlphabet().size();
+        int half = CycleCatalog.PERIOD / 2;
+        int[][] perms = new int[CycleCatalog.PERIOD][size];
+        for (int s = 0; s < CycleCatalog.PERIOD; s++) {
+            for (int x = 0; x < size; x++) {
+                m.insertRotors(new String[] {"R2", "Y", "X"});
+                m.setRotors(setting);
+                for (int k = 0; k < s; k++) {
+                    m.convert(0);
+                }
+                perms[s][x] = m.convert(x);
+            }
+        }
+        int[][] ans = new int[half][];
+        for (int s = 0; s < half; s++) {
+            boolean[] seen = new boolean[size];
+            List<Integer> lengths = new ArrayList<>();
+            for (int x = 0; x < size; x++) {
+                int len = 0;
+                for (int y = x; !seen[y]; y = perms[s + half][perms[s][y]]) {
+                    seen[y] = true;
+                    len += 1;
+                }
+                if (len > 0) {
+                    lengths.add(-len);
+                }
+            }
+            lengths.sort(null);
+            ans[s] = lengths.stream().mapToInt(n -> -n).toArray();
+        }
+        return ans;
+    }
+
+    /** Returns the characteristic of M with rotors R2, Y and X at
+     *  SETTING, as CycleCatalog computes it. */
+    private int[][] characteristic(Machine m, String setting) {
+        m.insertRotors(new String[] {"R2", "Y", "X"});
+        m.setRotors(setting);
+        return CycleCatalog.characteristic(TableMachine.of(m),
+                                           new int[CycleCatalog.PERIOD][]);
+    }
+
+    /* ***** TESTS ***** */
+
+    /** Tests the characteristics of known positions. */
+    @Test
+    public void checkKnownCharacteristic() {
+        Machine m = smallMachine();
+        assertEquals("3 3/1 1 1 1 1 1/2 2 1 1",
+                     CycleCatalog.format(characteristic(m, "AA")));
+        assertEquals("1 1 1 1 1 1/2 2 1 1/2 2 1 1",
+                     CycleCatalog.format(characteristic(m, "DB")));
+        for (String setting : new String[] {"AA", "DB", "FF", "CE"}) {
+            assertTrue(setting, Arrays.deepEquals(
+                slowCharacteristic(m, setting), characteristic(m, setting)));
+        }
+    }
+
+    /** Tests that format and parse are inverses. */
+    @Test
+    public void checkParse() {
+        int[][] chr = CycleCatalog.parse(" 1 3 3 1 / 2 1 1 2/6 ");
+        assertEquals("3 3 1 1/2 2 1 1/6", CycleCatalog.format(chr));
+        assertTrue(Arrays.deepEquals(chr,
+            CycleCatalog.parse(CycleCatalog.format(chr))));
+    }
+
+    /** Tests that a catalog written to a file finds the position whose
+     *  characteristic is looked up, and only positions with it. */
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Machine m = smallMachine();
+        File file = File.createTempFile("enigma", ".cyc");
+        file.deleteOnExit();
+        CycleCatalog catalog = new CycleCatalog(m);
+        catalog.write(file.getPath());
+        int[][] chr = characteristic(m, "DB");
+        List<String> found = catalog.lookup(file.getPath(), chr);
+        assertTrue(found.contains("* R2 Y X DB"));
+        for (String line : found) {
+            String[] fields = line.split(" ");
+            m.insertRotors(new String[] {fields[1], fields[2], fields[3]});
+            m.setRotors(fields[4]);
+            assertTrue(line, Arrays.deepEquals(chr,
+                CycleCatalog.characteristic(TableMachine.of(m),
+                    new int[CycleCatalog.PERIOD][])));
+        }
+        assertTrue(new CycleCatalog(m).lookup(file.getPath(), chr)
+                   .containsAll(found));
+    }
+
+    /** Tests that a catalog written in many uneven chunks is the same
+     *  file as one written in one chunk per rotor order. */
+    @Test
+    public void checkChunks() throws IOException {
+        Machine m = smallMachine();
+        File whole = File.createTempFile("enigma", ".cyc");
+        whole.deleteOnExit();
+        File chunked = File.createTempFile("enigma", ".cyc");
+        chunked.deleteOnExit();
+        CycleCatalog catalog = new CycleCatalog(m);
+        catalog.write(whole.getPath());
+        catalog.write(chunked.getPath(), 5);
+        assertTrue(Arrays.equals(Files.readAllBytes(whole.toPath()),
+                                 Files.readAllBytes(chunked.toPath())));
+        assertFalse(new File(chunked.getPath() + ".run0").exists());
+        assertTrue(catalog.lookup(chunked.getPath(),
+                                  characteristic(m, "DB"))
+                   .contains("* R2 Y X DB"));
+    }
+
+    /** Tests that looking up a characteristic no position has finds
+     *  nothing. */
+    @Test
+    public void checkUnknown() throws IOException {
+        Machine m = smallMachine();
+        File file = File.createTempFile("enigma", ".cyc");
+        file.deleteOnExit();
+        CycleCatalog catalog = new CycleCatalog(m);
+        catalog.write(file.getPath());
+        assertTrue(catalog.lookup(file.getPath(),
+                                  CycleCatalog.parse("6/6/6")).isEmpty());
+    }
+}
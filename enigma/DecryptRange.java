@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Decrypts part of a file written by Main with the option --index,
+ *  using the index to start from the nearest checkpoint before the part
+ *  wanted instead of from the start of the file.  The decryption is
+ *  printed as Main would print it, one character for each character of
+ *  the encrypted file: spaces between groups and line ends are kept,
+ *  and characters Main passed through unconverted are passed through
+ *  again.
+ *  @author Nicholas Moy
+ */
+public final class DecryptRange {
+
+    /** Decrypt as specified by ARGS, which has 5 elements.  ARGS[0]
+     *  names the configuration file used to encrypt, ARGS[1] the
+     *  encrypted file and ARGS[2] its index.  ARGS[3] and ARGS[4] are
+     *  the byte offsets in the encrypted file of the first character to
+     *  decrypt and of the character just past the last.  The result goes
+     *  to the standard output. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 5) {
+                throw error("Usage: java enigma.DecryptRange CONFIG"
+                            + " ENCRYPTED INDEX FROM TO");
+            }
+            long from, to;
+            try {
+                from = Long.parseLong(args[3]);
+                to = Long.parseLong(args[4]);
+            } catch (NumberFormatException excp) {
+                throw error("Bad offset");
+            }
+            if (from < 0 || from > to) {
+                throw error("Bad range of offsets");
+            }
+            Machine machine = Main.configure(args[0]);
+            List<SeekIndex.Checkpoint> index =
+                SeekIndex.read(args[2], machine.numRotors(),
+                               machine.getAlphabet().size());
+            Writer out = new OutputStreamWriter(System.out);
+            try (FileChannel in = new FileInputStream(args[1]).getChannel()) {
+                decrypt(machine, index, in, from, to, out);
+                out.flush();
+            } catch (IOException excp) {
+                throw error("I/O error: %s", excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Decrypt the characters of IN at byte offsets FROM to TO - 1 with
+     *  MACHINE, using the checkpoints INDEX, and write them to OUT.  The
+     *  characters of IN are in the default encoding. */
+    static void decrypt(Machine machine, List<SeekIndex.Checkpoint> index,
+                        SeekableByteChannel in, long from, long to,
+                        Writer out) throws IOException {
+        int k = SeekIndex.before(index, from);
+        if (k < 0) {
+            throw error("No checkpoint at or before offset %d", from);
+        }
+        machine.setNormalizer(new Normalizer(machine.getAlphabet(),
+                                             Normalizer.Policy.PASS, false));
+        index.get(k).restore(machine);
+        long offset = index.get(k).offset();
+        in.position(offset);
+        Reader reader = new InputStreamReader(Channels.newInputStream(in));
+        char[] buf = new char[BUFFER_SIZE];
+        long[] offsets = new long[BUFFER_SIZE];
+        char[] work = new char[BUFFER_SIZE];
+        char prev = 0;
+        int n;
+        while (offset < to && (n = reader.read(buf)) > 0) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (k + 1 < index.size()
+                    && index.get(k + 1).offset() <= offset) {
+                    convert(machine, buf, work, start, i);
+                    write(buf, offsets, start, i, from, to, out);
+                    while (k + 1 < index.size()
+                           && index.get(k + 1).offset() <= offset) {
+                        k += 1;
+                    }
+                    index.get(k).restore(machine);
+                    start = i;
+                }
+                offsets[i] = offset;
+                offset += width(prev, buf[i]);
+                prev = buf[i];
+            }
+            convert(machine, buf, work, start, n);
+            write(buf, offsets, start, n, from, to, out);
+        }
+    }
+
+    /** Decrypt in place with MACHINE the message characters among
+     *  BUF[FROM .. TO - 1], using WORK as scratch space. */
+    private static void convert(Machine machine, char[] buf, char[] work,
+                                int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (!separator(buf[i])) {
+                work[count++] = buf[i];
+            }
+        }
+        machine.convert(work, 0, count);
+        count = 0;
+        for (int i = from; i < to; i++) {
+            if (!separator(buf[i])) {
+                buf[i] = work[count++];
+            }
+        }
+    }
+
+    /** Write to OUT those of BUF[START .. END - 1] whose byte offsets,
+     *  given by OFFSETS, are at least FROM and less than TO. */
+    private static void write(char[] buf, long[] offsets, int start,
+                              int end, long from, long to, Writer out)
+        throws IOException {
+        while (start < end && offsets[start] < from) {
+            start += 1;
+        }
+        int last = start;
+        while (last < end && offsets[last] < to) {
+            last += 1;
+        }
+        out.write(buf, start, last - start);
+    }
+
+    /** Returns true iff C separates groups or lines in Main's output. */
+    private static boolean separator(char c) {
+        return c == ' ' || c == '\n' || c == '\r';
+    }
+
+    /** Returns the number of bytes C takes in the default encoding, when
+     *  it follows the character PREV.  The two halves of a surrogate pair
+     *  are counted together, at the second. */
+    private static int width(char prev, char c) {
+        if (c < ASCII_LIMIT) {
+            return 1;
+        } else if (Character.isHighSurrogate(c)) {
+            return 0;
+        } else if (Character.isLowSurrogate(c)
+                   && Character.isHighSurrogate(prev)) {
+            return new String(new char[] { prev, c }).getBytes().length;
+        } else {
+            return String.valueOf(c).getBytes().length;
+        }
+    }
+
+    /** Number of ASCII characters. */
+    private static final int ASCII_LIMIT = 128;
+
+    /** Number of characters decrypted at a time. */
+    private static final int BUFFER_SIZE = 1 << 13;
+}
@@ -0,0 +1,56 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** An OutputStream that converts every byte written to it through a
+ *  machine before passing it on to another stream.  As in BinaryMain,
+ *  each byte is the index of a character of the machine's alphabet,
+ *  which must have 256 characters.  The machine keeps its state from one
+ *  write to the next, and writes use only a buffer allocated when the
+ *  stream is made.
+ *  @author Nicholas Moy
+ */
+class EnigmaOutputStream extends FilterOutputStream {
+
+    /** A stream converting with MACHINE onto OUT. */
+    EnigmaOutputStream(OutputStream out, Machine machine) {
+        super(out);
+        if (machine.getAlphabet().size() != Machine.BYTE_SYMBOLS) {
+            throw error("Byte streams need an alphabet of %d characters",
+                        Machine.BYTE_SYMBOLS);
+        }
+        _machine = machine;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _buf[0] = (byte) b;
+        _machine.convert(_buf, 0, 1);
+        out.write(_buf[0]);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _buf.length);
+            System.arraycopy(b, off, _buf, 0, n);
+            _machine.convert(_buf, 0, n);
+            out.write(_buf, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Size of the conversion buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The machine converting bytes. */
+    private final Machine _machine;
+
+    /** Bytes being converted. */
+    private final byte[] _buf = new byte[BUFFER_SIZE];
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts everything read from another Reader through a
+ *  machine.  Message characters are handled as Machine.convert(String)
+ *  handles them, line terminators are passed on unchanged, and the
+ *  output may be grouped in fives as Main prints it.  The machine keeps
+ *  its state from one read to the next, and reads use only buffers
+ *  allocated when the reader is made.  Characters the machine rejects
+ *  raise an EnigmaException.
+ *  @author Nicholas Moy
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A reader converting what is read from IN with MACHINE, grouping
+     *  its output in fives iff GROUPED. */
+    EnigmaReader(Reader in, Machine machine, boolean grouped) {
+        super(in);
+        _filter = new MessageFilter(machine, grouped);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return _out[_pos++];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        } else if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, _end - _pos);
+        System.arraycopy(_out, _pos, cbuf, off, n);
+        _pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int k = (int) Math.min(n - skipped, _end - _pos);
+            _pos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return _pos < _end || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Make sure that converted characters are waiting in _out, reading
+     *  and converting more input if needed.  Returns false iff the input
+     *  ran out first. */
+    private boolean fill() throws IOException {
+        while (_pos == _end) {
+            int n = in.read(_in, 0, _in.length);
+            if (n < 0) {
+                return false;
+            }
+            _pos = 0;
+            _end = _filter.filter(_in, 0, n, _out, 0);
+        }
+        return true;
+    }
+
+    /** Size of the conversion buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Converts and groups characters. */
+    private final MessageFilter _filter;
+
+    /** Characters read but not yet converted. */
+    private final char[] _in = new char[BUFFER_SIZE];
+
+    /** Converted characters; those not yet read are _out[_pos .. _end - 1].
+     */
+    private final char[] _out = new char[MessageFilter.capacity(BUFFER_SIZE)];
+
+    /** Index of the next converted character to be read. */
+    private int _pos;
+
+    /** Index just past the last converted character. */
+    private int _end;
+}
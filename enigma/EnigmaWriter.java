@@ -0,0 +1,69 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts everything written to it through a machine
+ *  before passing it on to another Writer.  Message characters are
+ *  handled as Machine.convert(String) handles them, line terminators are
+ *  passed on unchanged, and the output may be grouped in fives as Main
+ *  prints it.  The machine keeps its state from one write to the next,
+ *  and writes use only buffers allocated when the writer is made.
+ *  Characters the machine rejects raise an EnigmaException.
+ *  @author Nicholas Moy
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** A writer converting with MACHINE onto OUT, grouping its output
+     *  in fives iff GROUPED. */
+    EnigmaWriter(Writer out, Machine machine, boolean grouped) {
+        super(out);
+        _filter = new MessageFilter(machine, grouped);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _in[0] = (char) c;
+        convert(1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _in.length);
+            System.arraycopy(cbuf, off, _in, 0, n);
+            convert(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _in.length);
+            str.getChars(off, off + n, _in, 0);
+            convert(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Convert the first N characters of _in and write the result. */
+    private void convert(int n) throws IOException {
+        out.write(_out, 0, _filter.filter(_in, 0, n, _out, 0));
+    }
+
+    /** Size of the conversion buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Converts and groups characters. */
+    private final MessageFilter _filter;
+
+    /** Characters waiting to be converted. */
+    private final char[] _in = new char[BUFFER_SIZE];
+
+    /** Converted characters. */
+    private final char[] _out = new char[MessageFilter.capacity(BUFFER_SIZE)];
+}
@@ -21,4 +21,9 @@ class FixedRotor extends Rotor {
     boolean reflecting() {
         return false;
     }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(name(), wiring());
+    }
 }
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.util.List;
+
+/** An Enigma machine held in a single int array.  The array holds, at
+ *  offsets computed once from the number of slots and the alphabet size,
+ *  the rotor settings, the plugboard and, for each slot, the forward and
+ *  inverse tables of its rotor.  Converting a character therefore
+ *  touches one object, and the whole working set of a 26-letter machine
+ *  fits in a few cache lines.  Stepping is left to a Stepper working on
+ *  the settings at the front of the array, so it costs the same however
+ *  many slots there are.  This is the table-driven ConversionEngine
+ *  of Machine, which builds one of these from its rotors and plugboard
+ *  to convert long enough messages.
+ *  @author Nicholas Moy
+ */
+class FlatMachine implements ConversionEngine {
+
+    /** A machine whose slots hold the rotors described by ROTORS, the
+     *  first of which must be the reflector, with all rotors at setting 0
+     *  and no plugboard. */
+    FlatMachine(Wiring[] rotors) {
+        int n = rotors.length;
+        _size = rotors[0].size();
+        _last = n - 1;
+        _plug = n;
+        _slots = _plug + _size;
+        _stride = 2 * _size;
+        _state = new int[_slots + n * _stride];
+        for (int i = 0; i < _size; i++) {
+            _state[_plug + i] = i;
+        }
+        for (int k = 0; k < n; k++) {
+            int base = forward(k);
+            System.arraycopy(rotors[k].forward(), 0, _state, base, _size);
+            System.arraycopy(rotors[k].backward(), 0, _state, base + _size,
+                             _size);
+        }
+        _stepper = new Stepper(rotors, _state);
+    }
+
+    /** A copy of OTHER, with its settings and plugboard, that steps
+     *  independently of it. */
+    FlatMachine(FlatMachine other) {
+        _size = other._size;
+        _last = other._last;
+        _plug = other._plug;
+        _slots = other._slots;
+        _stride = other._stride;
+        _state = other._state.clone();
+        _stepper = new Stepper(other._stepper, _state);
+    }
+
+    /** Returns a machine with the rotors, settings and plugboard that
+     *  MACHINE currently has. */
+    static FlatMachine of(Machine machine) {
+        FlatMachine ans = new FlatMachine(Wiring.of(machine.getRotors()));
+        ans.setPositions(machine.getRotors());
+        ans.setPlugboard(Wiring.table(machine.getPlugboard()));
+        return ans;
+    }
+
+    /** Returns the number of rotor slots I have. */
+    int numRotors() {
+        return _last + 1;
+    }
+
+    /** Returns the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    @Override
+    public int position(int k) {
+        return _state[k];
+    }
+
+    @Override
+    public void setPositions(List<Rotor> rotors) {
+        for (int k = 1; k <= _last; k++) {
+            _state[k] = rotors.get(k).setting();
+        }
+        _stepper.reset();
+    }
+
+    /** Set the rotors in slots 1 .. to POSNS[1 ..]. */
+    void setPositions(int[] posns) {
+        System.arraycopy(posns, 1, _state, 1, _last);
+        _stepper.reset();
+    }
+
+    /** Copy my rotor settings into POSNS, which is returned. */
+    int[] positions(int[] posns) {
+        System.arraycopy(_state, 0, posns, 0, _last + 1);
+        return posns;
+    }
+
+    /** Set my plugboard to the table PLUGBOARD, which is copied. */
+    void setPlugboard(int[] plugboard) {
+        System.arraycopy(plugboard, 0, _state, _plug, _size);
+    }
+
+    @Override
+    public void setPlugboard(Permutation plugboard) {
+        setPlugboard(Wiring.table(plugboard));
+    }
+
+    /** Advances my rotors as Machine advances its rotors. */
+    void advance() {
+        _stepper.advance();
+    }
+
+    /** Advances my rotors N times, taking time in proportion to the
+     *  number of carries rather than to N. */
+    void skip(long n) {
+        _stepper.skip(n);
+    }
+
+    @Override
+    public int convert(int c) {
+        advance();
+        return map(c);
+    }
+
+    /** Returns the conversion of C by the current rotor settings,
+     *  without advancing. */
+    int map(int c) {
+        int[] s = _state;
+        c = s[_plug + c];
+        for (int k = _last; k >= 0; k--) {
+            c = through(forward(k), s[k], c);
+        }
+        for (int k = 1; k <= _last; k++) {
+            c = through(forward(k) + _size, s[k], c);
+        }
+        return s[_plug + c];
+    }
+
+    @Override
+    public void convert(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            data[i] = (byte) convert(data[i] & 0xff);
+        }
+    }
+
+    /** Returns the offset in _state of the forward table of slot K; its
+     *  inverse table follows it. */
+    private int forward(int k) {
+        return _slots + k * _stride;
+    }
+
+    /** Returns the result of passing C through the table at offset TABLE
+     *  of _state when its rotor is at setting POSN. */
+    private int through(int table, int posn, int c) {
+        int k = c + posn;
+        if (k >= _size) {
+            k -= _size;
+        }
+        int r = _state[table + k] - posn;
+        return r < 0 ? r + _size : r;
+    }
+
+    /** The size of my alphabet. */
+    private final int _size;
+
+    /** The number of my last slot. */
+    private final int _last;
+
+    /** Offset in _state of the plugboard. */
+    private final int _plug;
+
+    /** Offset in _state of the tables of slot 0. */
+    private final int _slots;
+
+    /** Distance in _state between the tables of adjacent slots. */
+    private final int _stride;
+
+    /** The rotor settings, by slot, at offset 0, followed by the
+     *  plugboard at _plug and the tables of each slot from _slots. */
+    private final int[] _state;
+
+    /** Advances the settings in _state. */
+    private final Stepper _stepper;
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for FlatMachine and Stepper.
+ *  @author Nicholas Moy
+ */
+public class FlatMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Tests that a FlatMachine converts as Machine does, and that
+     *  converting a string leaves the rotors as converting its
+     *  characters one by one does. */
+    @Test
+    public void checkFlatMachineAgrees() {
+        Machine m = navalMachine(NAVAL_SETTINGS);
+        FlatMachine f = FlatMachine.of(m);
+        for (int i = 0; i < 2000; i++) {
+            int c = (i * 5) % 26;
+            assertEquals(msg("flat", "character %d", i),
+                         m.convert(c), f.convert(c));
+            for (int k = 1; k < 5; k++) {
+                assertEquals(m.getRotors().get(k).setting(), f.position(k));
+            }
+        }
+        m = navalMachine(NAVAL_SETTINGS);
+        Machine s = navalMachine(NAVAL_SETTINGS);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = "";
+        for (int i = 0; i < msg.length(); i++) {
+            expected += UPPER.toChar(m.convert(UPPER.toInt(msg.charAt(i))));
+        }
+        assertEquals(expected, s.convert(msg));
+        assertEquals(m.getSettings(), s.getSettings());
+    }
+
+    /** Tests that a FlatMachine with many slots, some fixed, steps as
+     *  Machine does. */
+    @Test
+    public void checkManyRotorsStep() {
+        Alphabet alpha = new CharacterRange('A', 'F');
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[40];
+        names[0] = "R";
+        rotors.add(new Reflector("R",
+                new Permutation("(AB) (CD) (EF)", alpha)));
+        for (int k = 1; k < names.length; k++) {
+            names[k] = "M" + k;
+            Permutation perm = new Permutation("(ACFB) (DE)", alpha);
+            if (k < 4) {
+                rotors.add(new FixedRotor(names[k], perm));
+            } else {
+                rotors.add(new MovingRotor(names[k], perm,
+                                           k % 3 == 0 ? "AD" : "CEF"));
+            }
+        }
+        Machine m = new Machine(alpha, names.length, names.length - 4,
+                                rotors);
+        m.insertRotors(names);
+        FlatMachine f = FlatMachine.of(m);
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(msg("many", "character %d", i),
+                         m.convert(i % 6), f.convert(i % 6));
+            for (int k = 1; k < names.length; k++) {
+                assertEquals(m.getRotors().get(k).setting(), f.position(k));
+            }
+        }
+    }
+}
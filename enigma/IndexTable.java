@@ -0,0 +1,137 @@
+package enigma;
+
+/** A fixed-length table of small non-negative integers, stored in the
+ *  narrowest primitive array that holds them.  Permutation and
+ *  CharacterRange keep their mappings in these, so that a rotor over a
+ *  26-letter alphabet costs bytes and one over tens of thousands of
+ *  characters costs two bytes per entry rather than a boxed map entry.
+ *  Each kind of table reads its entries without tests or branches.
+ *  @author Nicholas Moy
+ */
+abstract class IndexTable {
+
+    /** Returns a table of LENGTH zeros that can hold values in
+     *  0 .. RANGE - 1. */
+    static IndexTable of(int length, int range) {
+        if (range <= 1 << Byte.SIZE) {
+            return new Bytes(length);
+        } else if (range <= 1 << Character.SIZE) {
+            return new Chars(length);
+        } else {
+            return new Ints(length);
+        }
+    }
+
+    /** Returns entry I. */
+    abstract int get(int i);
+
+    /** Set entry I to VALUE. */
+    abstract void set(int i, int value);
+
+    /** Returns the number of entries. */
+    abstract int length();
+
+    /** Returns the number of bytes taken by each entry. */
+    abstract int width();
+
+    /** Returns the number of bytes my entries occupy. */
+    long bytes() {
+        return (long) length() * width();
+    }
+
+    /** A table of entries in 0 .. 255. */
+    private static final class Bytes extends IndexTable {
+
+        /** A table of LENGTH zeros. */
+        Bytes(int length) {
+            _data = new byte[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _data[i] & 0xff;
+        }
+
+        @Override
+        void set(int i, int value) {
+            _data[i] = (byte) value;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        int width() {
+            return Byte.BYTES;
+        }
+
+        /** My entries. */
+        private final byte[] _data;
+    }
+
+    /** A table of entries in 0 .. 65535. */
+    private static final class Chars extends IndexTable {
+
+        /** A table of LENGTH zeros. */
+        Chars(int length) {
+            _data = new char[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _data[i];
+        }
+
+        @Override
+        void set(int i, int value) {
+            _data[i] = (char) value;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        int width() {
+            return Character.BYTES;
+        }
+
+        /** My entries. */
+        private final char[] _data;
+    }
+
+    /** A table of arbitrary non-negative entries. */
+    private static final class Ints extends IndexTable {
+
+        /** A table of LENGTH zeros. */
+        Ints(int length) {
+            _data = new int[length];
+        }
+
+        @Override
+        int get(int i) {
+            return _data[i];
+        }
+
+        @Override
+        void set(int i, int value) {
+            _data[i] = value;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        int width() {
+            return Integer.BYTES;
+        }
+
+        /** My entries. */
+        private final int[] _data;
+    }
+}
@@ -0,0 +1,254 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Runs the integration tests of testing/test-correct and
+ *  testing/test-error inside one JVM, several at a time, instead of
+ *  starting a JVM for each.  Each case, F.inp, is converted as Main would
+ *  convert it, using F.conf as configuration file if it exists and
+ *  otherwise default.conf in the same directory, with its output and
+ *  error messages captured in memory.  A case in a directory of correct
+ *  inputs passes if it succeeds and its output and errors together
+ *  match F.out, ignoring differences in the amount of whitespace, as
+ *  diff -b does.  A case in a directory of erroneous inputs passes if it
+ *  reports an error without an uncaught exception.  As in the scripts,
+ *  each case has an output limit and a time limit, the latter counted
+ *  from when the case starts.  A case over its time limit is cancelled
+ *  and, since it may not stop, given up for lost along with its
+ *  thread, which is replaced.
+ *  @author Nicholas Moy
+ */
+public final class IntegrationRunner {
+
+    /** Run the cases in the directories named by ARGS, each preceded by
+     *  --correct or --error to say which kind of case it holds, or by
+     *  default the cases in testing/correct and testing/error.  Reports
+     *  each case with its time, and exits with code 1 if any failed. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            args = new String[] { "--correct", "testing/correct",
+                                  "--error", "testing/error" };
+        }
+        List<File> cases = new ArrayList<>();
+        List<Boolean> kinds = new ArrayList<>();
+        boolean correct = true;
+        for (String arg : args) {
+            if (arg.equals("--correct") || arg.equals("--error")) {
+                correct = arg.equals("--correct");
+                continue;
+            }
+            File[] files = new File(arg).listFiles(
+                (dir, name) -> name.endsWith(".inp"));
+            if (files == null) {
+                System.err.printf("Error: no directory %s%n", arg);
+                System.exit(1);
+            }
+            Arrays.sort(files);
+            for (File f : files) {
+                cases.add(f);
+                kinds.add(correct);
+            }
+        }
+        long start = System.nanoTime();
+        List<String> failures = runAll(cases, kinds, System.out);
+        System.out.printf("%d cases, %d failed, %d ms%n", cases.size(),
+                          failures.size(),
+                          (System.nanoTime() - start) / NANOS_PER_MILLI);
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /** Run CASES, each correct or erroneous as KINDS says, several at a
+     *  time, reporting each in order on OUT.  Returns the cases that
+     *  failed. */
+    static List<String> runAll(List<File> cases, List<Boolean> kinds,
+                               PrintStream out) {
+        ThreadPoolExecutor pool =
+            (ThreadPoolExecutor) Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), r -> {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    return t;
+                });
+        List<Future<String>> outcomes = new ArrayList<>();
+        List<AtomicLong> starts = new ArrayList<>();
+        for (int k = 0; k < cases.size(); k++) {
+            File f = cases.get(k);
+            boolean correct = kinds.get(k);
+            AtomicLong started = new AtomicLong();
+            starts.add(started);
+            outcomes.add(pool.submit(() -> check(f, correct, started)));
+        }
+        List<String> failures = new ArrayList<>();
+        for (int k = 0; k < cases.size(); k++) {
+            String outcome;
+            try {
+                outcome = await(outcomes.get(k), starts.get(k));
+            } catch (TimeoutException excp) {
+                outcomes.get(k).cancel(true);
+                pool.setMaximumPoolSize(pool.getMaximumPoolSize() + 1);
+                pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+                outcome = "ERROR (time limit exceeded)";
+            } catch (InterruptedException | ExecutionException excp) {
+                outcome = "ERROR (" + excp + ")";
+            }
+            if (!outcome.startsWith("OK")) {
+                failures.add(cases.get(k).getPath());
+            }
+            out.printf("%s: %s%n", cases.get(k).getPath(), outcome);
+        }
+        pool.shutdownNow();
+        return failures;
+    }
+
+    /** Returns the result of OUTCOME, a case that sets STARTED to the
+     *  value of System.nanoTime() when it starts, once it is done, or
+     *  throws TimeoutException if it is not done within TIME_LIMIT
+     *  seconds of starting. */
+    private static String await(Future<String> outcome, AtomicLong started)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        long limit = TimeUnit.SECONDS.toNanos(TIME_LIMIT);
+        while (true) {
+            long start = started.get();
+            long wait = start == 0 ? limit
+                : start + limit - System.nanoTime();
+            try {
+                return outcome.get(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException excp) {
+                if (start != 0) {
+                    throw excp;
+                }
+            }
+        }
+    }
+
+    /** Returns the outcome of running the case INP, which is a correct
+     *  input iff CORRECT: "OK" or "ERROR" followed by a reason, and then
+     *  the time taken.  Sets STARTED, if it is not null, to the value of
+     *  System.nanoTime() when the case starts. */
+    static String check(File inp, boolean correct, AtomicLong started) {
+        String base = inp.getPath().replaceFirst("\\.inp$", "");
+        File config = new File(base + ".conf");
+        if (!config.exists()) {
+            config = new File(inp.getParentFile(), "default.conf");
+        }
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(new Limited(captured));
+        long start = System.nanoTime();
+        if (started != null) {
+            started.set(start);
+        }
+        String result;
+        try (InputStream in = new FileInputStream(inp)) {
+            boolean ok = run(config.getPath(), in, output);
+            output.flush();
+            if (!correct) {
+                result = ok ? "ERROR (did not report error)" : "OK";
+            } else if (!ok) {
+                result = "ERROR (bad exit code)";
+            } else {
+                String expected = new String(Files.readAllBytes(
+                    new File(base + ".out").toPath()));
+                result = normalize(captured.toString()).equals(
+                    normalize(expected)) ? "OK" : "ERROR (output)";
+            }
+        } catch (OutputLimit excp) {
+            result = "ERROR (too much output)";
+        } catch (IOException excp) {
+            result = "ERROR (" + excp.getMessage() + ")";
+        } catch (RuntimeException | Error excp) {
+            result = "ERROR (uncaught exception: " + excp + ")";
+        }
+        return String.format("%s (%d ms)", result,
+                             (System.nanoTime() - start) / NANOS_PER_MILLI);
+    }
+
+    /** Convert IN as Main would with the configuration file CONFIG,
+     *  writing the output and any error message to OUT.  Returns true
+     *  iff there was no error. */
+    private static boolean run(String config, InputStream in,
+                               PrintStream out) {
+        try {
+            new Main(in, out, Normalizer.Policy.ERROR, true)
+                .convert(Main.configure(config));
+            return true;
+        } catch (EnigmaException excp) {
+            out.printf("Error: %s%n", excp.getMessage());
+            return false;
+        }
+    }
+
+    /** Returns TEXT with each run of whitespace within a line made a
+     *  single space, whitespace at the ends of lines removed and a final
+     *  line end ignored, as diff -b compares files. */
+    private static String normalize(String text) {
+        StringBuilder ans = new StringBuilder();
+        text = text.replaceFirst("\r?\n\\z", "");
+        for (String line : text.split("\r?\n", -1)) {
+            ans.append(line.replaceAll("[ \t\f]+", " ")
+                       .replaceAll(" $", "")).append('\n');
+        }
+        return ans.toString();
+    }
+
+    /** Raised when a case writes too much output. */
+    private static class OutputLimit extends RuntimeException {
+    }
+
+    /** An OutputStream that raises OutputLimit once more than
+     *  OUTPUT_LIMIT bytes have been written to it. */
+    private static class Limited extends OutputStream {
+
+        /** A stream passing what is written on to OUT. */
+        Limited(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _count += len;
+            if (_count > OUTPUT_LIMIT) {
+                throw new OutputLimit();
+            }
+            _out.write(b, off, len);
+        }
+
+        /** Where output goes. */
+        private final OutputStream _out;
+
+        /** Number of bytes written. */
+        private long _count;
+    }
+
+    /** Seconds allowed for each case. */
+    private static final int TIME_LIMIT = 5;
+
+    /** Bytes of output allowed for each case. */
+    private static final int OUTPUT_LIMIT = 100 * 1024;
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+}
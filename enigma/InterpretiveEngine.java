@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.List;
+
+/** A ConversionEngine that converts with a machine's Rotor and
+ *  Permutation objects directly.  Each character costs a modular
+ *  addition and a table lookup through each rotor's Permutation, but
+ *  nothing need be built first, which makes it the cheaper engine for
+ *  short messages, especially over large alphabets.  The settings are
+ *  kept here, not in the rotors, and advanced by a Stepper, so that
+ *  stepping costs about the same however many slots there are.
+ *  @author Nicholas Moy
+ */
+class InterpretiveEngine implements ConversionEngine {
+
+    /** An engine for a machine whose slots hold ROTORS, the first of
+     *  which must be the reflector, and whose plugboard is PLUGBOARD,
+     *  starting at the rotors' current settings.  Neither is copied,
+     *  and the rotors may not change while I am in use, except for
+     *  their settings. */
+    InterpretiveEngine(List<Rotor> rotors, Permutation plugboard) {
+        _perms = new Permutation[rotors.size()];
+        for (int k = 0; k < _perms.length; k++) {
+            _perms[k] = rotors.get(k).permutation();
+        }
+        _plugboard = plugboard;
+        _posns = new int[rotors.size()];
+        for (int k = 1; k < _posns.length; k++) {
+            _posns[k] = rotors.get(k).setting();
+        }
+        _stepper = new Stepper(rotors, _posns);
+    }
+
+    @Override
+    public int convert(int c) {
+        _stepper.advance();
+
+        c = _plugboard.permute(c);
+        for (int i = _perms.length - 1; i >= 0; i--) {
+            Permutation perm = _perms[i];
+            c = perm.wrap(perm.permute(c + _posns[i]) - _posns[i]);
+        }
+        for (int i = 1; i < _perms.length; i++) {
+            Permutation perm = _perms[i];
+            c = perm.wrap(perm.invert(c + _posns[i]) - _posns[i]);
+        }
+        return _plugboard.permute(c);
+    }
+
+    @Override
+    public void convert(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            data[i] = (byte) convert(data[i] & 0xff);
+        }
+    }
+
+    @Override
+    public void setPositions(List<Rotor> rotors) {
+        for (int k = 1; k < _posns.length; k++) {
+            _posns[k] = rotors.get(k).setting();
+        }
+        _stepper.reset();
+    }
+
+    @Override
+    public int position(int k) {
+        return _posns[k];
+    }
+
+    @Override
+    public void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** The permutations of the rotors in my slots, starting with the
+     *  reflector. */
+    private final Permutation[] _perms;
+
+    /** The plugboard. */
+    private Permutation _plugboard;
+
+    /** The settings of my rotors, by slot. */
+    private final int[] _posns;
+
+    /** Advances _posns. */
+    private final Stepper _stepper;
+}
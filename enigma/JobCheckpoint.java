@@ -0,0 +1,250 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Durable checkpoints of a run of Main over an input file, from which
+ *  an interrupted run can be resumed to produce exactly the output it
+ *  would have produced.  A checkpoint is taken at the end of an input
+ *  line at least every INTERVAL bytes of input, once the output up to
+ *  that point has been written and synced to disk.  It records the
+ *  offsets reached in the input and output, the settings line in force,
+ *  a snapshot of the machine's state, and checksums of the bytes just
+ *  before each offset, so that a checkpoint is not applied to different
+ *  files.  It is written to a temporary file that is then renamed over the last
+ *  checkpoint, so that the checkpoint file is always complete.
+ *  @author Nicholas Moy
+ */
+class JobCheckpoint {
+
+    /** A checkpointed state of a run. */
+    static class State {
+
+        /** A state at byte INPUTOFFSET of the input and OUTPUTOFFSET of
+         *  the output, where the settings line SETTINGS applies and the
+         *  machine's state is the snapshot STATE of a machine with
+         *  NUMROTORS slots.  AFTERCR is true iff the last input byte was a
+         *  carriage return. */
+        State(long inputOffset, long outputOffset, boolean afterCR,
+              String settings, int numRotors, long[] state) {
+            _inputOffset = inputOffset;
+            _outputOffset = outputOffset;
+            _afterCR = afterCR;
+            _settings = settings;
+            _numRotors = numRotors;
+            _state = state;
+        }
+
+        /** Returns the offset reached in the input. */
+        long inputOffset() {
+            return _inputOffset;
+        }
+
+        /** Returns the offset reached in the output. */
+        long outputOffset() {
+            return _outputOffset;
+        }
+
+        /** Returns true iff the last input byte read was a carriage
+         *  return, so that a newline next belongs to the same line
+         *  ending. */
+        boolean afterCR() {
+            return _afterCR;
+        }
+
+        /** Returns the settings line in force. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Set MACHINE to my state. */
+        void restore(Machine machine) {
+            if (_numRotors != machine.numRotors()
+                || _state.length != machine.stateWords()) {
+                throw error("Checkpoint does not match configuration");
+            }
+            Main.setUp(machine, _settings);
+            machine.restoreState(_state);
+        }
+
+        /** Offset reached in the input. */
+        private final long _inputOffset;
+
+        /** Offset reached in the output. */
+        private final long _outputOffset;
+
+        /** True iff the last input byte was a carriage return. */
+        private final boolean _afterCR;
+
+        /** The settings line in force. */
+        private final String _settings;
+
+        /** The number of rotor slots of the machine. */
+        private final int _numRotors;
+
+        /** The snapshot of the machine's state. */
+        private final long[] _state;
+    }
+
+    /** Checkpoints of a run with MACHINE from the file named INPUT to the
+     *  file named OUTPUT, written through OUT, to be kept in the file
+     *  named NAME. */
+    JobCheckpoint(String name, Machine machine, String input,
+                  String output, FileOutputStream out) {
+        _name = name;
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _out = out;
+    }
+
+    /** Returns true iff a checkpoint is due at byte INPUTOFFSET of the
+     *  input. */
+    boolean due(long inputOffset) {
+        return inputOffset >= _next;
+    }
+
+    /** Start counting towards the next checkpoint from byte INPUTOFFSET
+     *  of the input. */
+    void start(long inputOffset) {
+        _next = inputOffset + _interval;
+    }
+
+    /** Take checkpoints at least every INTERVAL bytes of input, rather
+     *  than every JobCheckpoint.INTERVAL, from now on. */
+    void setInterval(long interval) {
+        _interval = interval;
+        _next = interval;
+    }
+
+    /** Take a checkpoint at byte INPUTOFFSET of the input, all output up
+     *  to byte OUTPUTOFFSET having been written, where the settings line
+     *  SETTINGS applies.  AFTERCR is true iff the last input byte was a
+     *  carriage return. */
+    void save(long inputOffset, long outputOffset, boolean afterCR,
+              String settings) {
+        File temp = new File(_name + ".tmp");
+        try {
+            _out.getFD().sync();
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                DataOutputStream out = new DataOutputStream(file);
+                out.writeInt(MAGIC);
+                out.writeLong(inputOffset);
+                out.writeInt(tail(_input, inputOffset));
+                out.writeLong(outputOffset);
+                out.writeInt(tail(_output, outputOffset));
+                out.writeBoolean(afterCR);
+                out.writeUTF(settings);
+                out.writeInt(_machine.numRotors());
+                long[] state = _machine.saveState();
+                out.writeInt(state.length);
+                for (long word : state) {
+                    out.writeLong(word);
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp.toPath(), new File(_name).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", _name);
+        }
+        start(inputOffset);
+    }
+
+    /** Remove the checkpoint file, the run having finished. */
+    void finish() {
+        new File(_name).delete();
+    }
+
+    /** Returns the state saved in the checkpoint file NAME for a run from
+     *  the file named INPUT to the file named OUTPUT, checking that it
+     *  matches both, or null if there is no checkpoint file. */
+    static State read(String name, String input, String output) {
+        if (!new File(name).exists()) {
+            return null;
+        }
+        try (DataInputStream in =
+                 new DataInputStream(new FileInputStream(name))) {
+            if (in.readInt() != MAGIC) {
+                throw error("Not a checkpoint file: %s", name);
+            }
+            long inputOffset = in.readLong();
+            if (in.readInt() != tail(input, inputOffset)) {
+                throw error("Checkpoint does not match input %s", input);
+            }
+            long outputOffset = in.readLong();
+            if (in.readInt() != tail(output, outputOffset)) {
+                throw error("Checkpoint does not match output %s", output);
+            }
+            boolean afterCR = in.readBoolean();
+            String settings = in.readUTF();
+            int numRotors = in.readInt();
+            long[] state = new long[in.readInt()];
+            for (int w = 0; w < state.length; w++) {
+                state[w] = in.readLong();
+            }
+            return new State(inputOffset, outputOffset, afterCR, settings,
+                             numRotors, state);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", name);
+        }
+    }
+
+    /** Returns the checksum of the (up to) TAIL bytes before byte OFFSET
+     *  of the file named NAME, which must have at least OFFSET bytes. */
+    private static int tail(String name, long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(name, "r")) {
+            if (file.length() < offset) {
+                throw error("%s is shorter than its checkpoint", name);
+            }
+            byte[] buf = new byte[(int) Math.min(offset, TAIL)];
+            file.seek(offset - buf.length);
+            file.readFully(buf);
+            CRC32 crc = new CRC32();
+            crc.update(buf);
+            return (int) crc.getValue();
+        }
+    }
+
+    /** Default least number of input bytes between checkpoints. */
+    static final long INTERVAL = 1 << 24;
+
+    /** Number of bytes before each offset covered by its checksum. */
+    private static final int TAIL = 1 << 12;
+
+    /** Identifies checkpoint files. */
+    private static final int MAGIC = 0x454e4350;
+
+    /** Name of the checkpoint file. */
+    private final String _name;
+
+    /** The machine whose state is saved. */
+    private final Machine _machine;
+
+    /** Name of the input file. */
+    private final String _input;
+
+    /** Name of the output file. */
+    private final String _output;
+
+    /** The stream writing the output file. */
+    private final FileOutputStream _out;
+
+    /** Least number of input bytes between checkpoints. */
+    private long _interval = INTERVAL;
+
+    /** Input offset at which the next checkpoint is due. */
+    private long _next = INTERVAL;
+}
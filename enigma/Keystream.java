@@ -0,0 +1,171 @@
+package enigma;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** Streams over the sequence of states a machine steps through.  The
+ *  streams split for parallel processing by copying the machine and
+ *  skipping the copy ahead to the split point, which costs time only in
+ *  proportion to the carries between the rotors, so parallel pipelines
+ *  divide the work evenly without replaying it.  Neither stream changes
+ *  the machine it is made from.
+ *  @author Nicholas Moy
+ */
+class Keystream {
+
+    /** Returns an ordered stream of the permutations MACHINE applies to
+     *  the next COUNT characters it converts, each as a table of
+     *  alphabet indices. */
+    static Stream<int[]> permutations(Machine machine, long count) {
+        return StreamSupport.stream(
+            new Permutations(FlatMachine.of(machine), 0, count), false);
+    }
+
+    /** Returns an ordered stream of the conversions by MACHINE of the
+     *  alphabet indices TEXT. */
+    static IntStream convert(Machine machine, int[] text) {
+        return StreamSupport.intStream(
+            new Characters(FlatMachine.of(machine), text, 0, text.length),
+            false);
+    }
+
+    /** Characteristics of my spliterators. */
+    private static final int CHARACTERISTICS = Spliterator.ORDERED
+        | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE
+        | Spliterator.NONNULL;
+
+    /** Positions FROM up to FENCE of a machine's sequence of steps. */
+    private abstract static class Positions {
+
+        /** Positions FROM .. FENCE - 1 of the steps of a machine that is
+         *  now at MACHINE's position FROM. */
+        Positions(FlatMachine machine, long from, long fence) {
+            _machine = machine;
+            _index = from;
+            _fence = fence;
+        }
+
+        /** Returns the number of positions left. */
+        public long estimateSize() {
+            return _fence - _index;
+        }
+
+        /** Returns my characteristics. */
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+
+        /** If there are enough positions left to be worth it, returns a
+         *  copy of my machine at its current position and then skips
+         *  my machine ahead to the middle of my positions, which becomes
+         *  my first.  Otherwise returns null. */
+        FlatMachine splitOff() {
+            if (_fence - _index < MIN_SPLIT) {
+                return null;
+            }
+            FlatMachine prefix = new FlatMachine(_machine);
+            _machine.skip(middle() - _index);
+            return prefix;
+        }
+
+        /** Returns the position halfway through mine. */
+        long middle() {
+            return (_index + _fence) >>> 1;
+        }
+
+        /** My machine, which is at position _index. */
+        protected final FlatMachine _machine;
+
+        /** My next position. */
+        protected long _index;
+
+        /** The position just past my last one. */
+        protected long _fence;
+    }
+
+    /** The permutations applied at a range of positions. */
+    private static class Permutations extends Positions
+        implements Spliterator<int[]> {
+
+        /** Permutations at positions FROM .. FENCE - 1 of a machine now
+         *  at MACHINE's position FROM. */
+        Permutations(FlatMachine machine, long from, long fence) {
+            super(machine, from, fence);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            if (_index >= _fence) {
+                return false;
+            }
+            _machine.advance();
+            int[] perm = new int[_machine.size()];
+            for (int c = 0; c < perm.length; c++) {
+                perm[c] = _machine.map(c);
+            }
+            _index += 1;
+            action.accept(perm);
+            return true;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            long from = _index, mid = middle();
+            FlatMachine prefix = splitOff();
+            if (prefix == null) {
+                return null;
+            }
+            _index = mid;
+            return new Permutations(prefix, from, mid);
+        }
+    }
+
+    /** The conversions of a range of characters of a text. */
+    private static class Characters extends Positions
+        implements Spliterator.OfInt {
+
+        /** Conversions of TEXT[FROM .. FENCE - 1] by a machine now at
+         *  MACHINE's position FROM. */
+        Characters(FlatMachine machine, int[] text, int from, int fence) {
+            super(machine, from, fence);
+            _text = text;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (_index >= _fence) {
+                return false;
+            }
+            action.accept(_machine.convert(_text[(int) _index++]));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            for (; _index < _fence; _index++) {
+                action.accept(_machine.convert(_text[(int) _index]));
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            long from = _index, mid = middle();
+            FlatMachine prefix = splitOff();
+            if (prefix == null) {
+                return null;
+            }
+            _index = mid;
+            return new Characters(prefix, _text, (int) from, (int) mid);
+        }
+
+        /** The text being converted. */
+        private final int[] _text;
+    }
+
+    /** Fewest positions worth splitting. */
+    private static final long MIN_SPLIT = 1 << 10;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.io.PrintStream;
 import java.util.Collection;
 import java.util.ArrayList;
 import static enigma.EnigmaException.*;
@@ -28,6 +29,22 @@ class Machine {
         _plugboard = new Permutation("", _alphabet);
     }
 
+    /** Return a new machine with my alphabet, slots, pawls, normalizer
+     *  and available rotors, each rotor a copy of mine, with no rotors
+     *  inserted yet.  The copy shares no state that either changes, so
+     *  the two can be used independently, in different threads. */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allRotors) {
+            rotors.add(r.copy());
+        }
+        Machine ans = new Machine(_alphabet, _numRotors, _pawls, rotors);
+        ans._normalizer = _normalizer;
+        ans._engineKind = _engineKind;
+        ans._log = _log;
+        return ans;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -40,9 +57,10 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  If these are
+     *  the rotors already in place, my engine is kept. */
     void insertRotors(String[] rotors) {
-        _rotors = new ArrayList<>();
+        ArrayList<Rotor> inserted = new ArrayList<>();
         int counter = 0;
         for (int i = 0; i < rotors.length; i++) {
             String s = rotors[i];
@@ -56,7 +74,7 @@ class Machine {
                     if (r.rotates()) {
                         counter++;
                     }
-                    _rotors.add(r);
+                    inserted.add(r);
                     rotorAdded = true;
                     break;
                 }
@@ -68,6 +86,10 @@ class Machine {
         if (counter != _pawls) {
             throw error("Wrong number of moving rotors");
         }
+        if (!inserted.equals(_rotors)) {
+            dropEngine();
+            _rotors = inserted;
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -77,6 +99,8 @@ class Machine {
         if (setting.length() != _rotors.size() - 1) {
             throw error("Bad rotor settings");
         } else {
+            saveSettings();
+            _engineStale = true;
             for (int i = 0; i < setting.length(); i++) {
                 char c = setting.charAt(i);
                 if (!_alphabet.contains(c)) {
@@ -87,32 +111,51 @@ class Machine {
         }
     }
 
+    /** Set the ring settings of my rotors according to RINGS, which must
+     *  be a string of numRotors()-1 characters of my alphabet, the first
+     *  for the leftmost rotor (not counting the reflector). */
+    void setRings(String rings) {
+        if (rings.length() != _rotors.size() - 1) {
+            throw error("Bad ring settings");
+        }
+        for (int i = 0; i < rings.length(); i++) {
+            if (!_alphabet.contains(rings.charAt(i))) {
+                throw error("Bad ring settings not in alphabet");
+            }
+        }
+        for (int i = 0; i < rings.length(); i++) {
+            Rotor rotor = _rotors.get(i + 1);
+            int ring = _alphabet.toInt(rings.charAt(i));
+            if (rotor.ring() != ring) {
+                dropEngine();
+                rotor.setRing(ring);
+            }
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        if (_engine != null) {
+            _engine.setPlugboard(plugboard);
+        }
+    }
+
+    /** Returns my plugboard. */
+    Permutation getPlugboard() {
+        return _plugboard;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        advance();
-
-        c = _plugboard.permute(c);
-        for (int i = _rotors.size() - 1; i >= 0; i--) {
-            Rotor r = _rotors.get(i);
-            c = r.convertForward(c);
-        }
-        for (int i = 1; i < _rotors.size(); i++) {
-            Rotor r = _rotors.get(i);
-            c = r.convertBackward(c);
-        }
-        c = _plugboard.permute(c);
-        return c;
+        return engine(1).convert(_plugboard.wrap(c));
     }
 
     /** Returns the settings of the machine (for testing). */
     String getSettings() {
+        saveSettings();
         String ans = "";
         for (Rotor r : _rotors) {
             ans = ans + r.setting() + " ";
@@ -120,49 +163,292 @@ class Machine {
         return ans;
     }
 
-    /** Advances all the rotors of this machine. */
-    private void advance() {
-        for (int i = 0; i < _rotors.size(); i++) {
-            Rotor r = _rotors.get(i);
+    /** Returns the number of longs in a snapshot of the state of a
+     *  machine with NUMROTORS slots and an alphabet of SIZE characters.
+     *  The setting of each of slots 1 .. NUMROTORS - 1 takes the fewest
+     *  bits that hold any index of the alphabet, packed from the low
+     *  end of each long without straddling two of them. */
+    static int stateWords(int numRotors, int size) {
+        int perWord = Long.SIZE / stateBits(size);
+        return Math.max(1, (numRotors - 1 + perWord - 1) / perWord);
+    }
 
-            if (i == _rotors.size() - 1) {
-                r.advance();
-            } else if (i != 0) {
-                Rotor rp = _rotors.get(i - 1);
-                Rotor rn = _rotors.get(i + 1);
-                if ((r.atNotch() && rp.rotates())
-                        || (rn.atNotch() && r.rotates())) {
-                    r.advance();
-                }
+    /** Returns the number of bits taken by each rotor setting in a
+     *  snapshot of a machine with an alphabet of SIZE characters. */
+    private static int stateBits(int size) {
+        return Math.max(1, Integer.SIZE
+                        - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /** Returns the number of longs in a snapshot of my state. */
+    int stateWords() {
+        return stateWords(_numRotors, _alphabet.size());
+    }
+
+    /** Returns a snapshot of my state: the settings of my rotors, packed
+     *  as described at stateWords.  The rotors themselves and the
+     *  plugboard are not included; a snapshot may be restored only while
+     *  the same ones are in place. */
+    long[] saveState() {
+        long[] state = new long[stateWords()];
+        saveState(state);
+        return state;
+    }
+
+    /** Place a snapshot of my state, as for saveState(), in STATE, which
+     *  must have at least stateWords() elements. */
+    void saveState(long[] state) {
+        saveSettings();
+        int bits = stateBits(_alphabet.size());
+        int w = 0, used = 0;
+        state[0] = 0;
+        for (int k = 1; k < _rotors.size(); k++) {
+            if (used + bits > Long.SIZE) {
+                w += 1;
+                state[w] = 0;
+                used = 0;
             }
+            state[w] |= (long) _rotors.get(k).setting() << used;
+            used += bits;
         }
     }
 
-    /** Returns the rotors of the machine (for testing). */
+    /** Return my rotors to the settings of the snapshot STATE, taken by
+     *  saveState() with my current rotors in place. */
+    void restoreState(long[] state) {
+        _rotorsStale = false;
+        _engineStale = true;
+        int bits = stateBits(_alphabet.size());
+        long mask = (1L << bits) - 1;
+        int w = 0, used = 0;
+        for (int k = 1; k < _rotors.size(); k++) {
+            if (used + bits > Long.SIZE) {
+                w += 1;
+                used = 0;
+            }
+            _rotors.get(k).set((int) ((state[w] >>> used) & mask));
+            used += bits;
+        }
+    }
+
+    /** Returns a snapshot of my state as a single long, as for
+     *  saveState(), which requires that stateWords() be 1. */
+    long packedState() {
+        if (stateWords() != 1) {
+            throw error("Machine state does not fit in a long");
+        }
+        saveSettings();
+        int bits = stateBits(_alphabet.size());
+        long state = 0;
+        for (int k = 1, used = 0; k < _rotors.size(); k++, used += bits) {
+            state |= (long) _rotors.get(k).setting() << used;
+        }
+        return state;
+    }
+
+    /** Return my rotors to the settings of the snapshot STATE, taken by
+     *  packedState() with my current rotors in place. */
+    void restoreState(long state) {
+        _rotorsStale = false;
+        _engineStale = true;
+        int bits = stateBits(_alphabet.size());
+        long mask = (1L << bits) - 1;
+        for (int k = 1; k < _rotors.size(); k++, state >>>= bits) {
+            _rotors.get(k).set((int) (state & mask));
+        }
+    }
+
+    /** Returns the rotors of the machine (for testing), at their current
+     *  settings.  Any changes made to their settings take effect the next
+     *  time I convert. */
     ArrayList<Rotor> getRotors() {
+        saveSettings();
+        _engineStale = true;
         return _rotors;
     }
 
+    /** Returns all the rotors available to this machine. */
+    ArrayList<Rotor> getAllRotors() {
+        return _allRotors;
+    }
+
     /** Returns the alphabet of the machine (for resting).*/
     Alphabet getAlphabet() {
         return _alphabet;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  Characters of MSG are first classified by
+     *  my normalizer; those outside my alphabet are dropped, copied to
+     *  the result or reported as errors as it directs.  The conversion
+     *  itself is done by my ConversionEngine. */
     String convert(String msg) {
-        msg = msg.replaceAll(" ", "");
-        msg = msg.toUpperCase();
-        String ans = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char c = msg.charAt(i);
-            int index = _alphabet.toInt(c);
-            index = convert(index);
-            ans = ans + _alphabet.toChar(index);
+        char[] buf = msg.toCharArray();
+        return new String(buf, 0, convert(buf, 0, buf.length));
+    }
+
+    /** Convert the message characters BUF[FROM .. TO - 1] as
+     *  convert(String) does, without allocating, placing the result in
+     *  BUF[FROM ..] and returning the index just past its end, which can
+     *  be no more than TO. */
+    int convert(char[] buf, int from, int to) {
+        Normalizer norm = getNormalizer();
+        ConversionEngine engine = engine(to - from);
+        int end = from;
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            int index = norm.classify(c);
+            if (index >= 0) {
+                buf[end++] = _alphabet.toChar(engine.convert(index));
+            } else if (index == Normalizer.PASS) {
+                buf[end++] = c;
+            } else if (index == Normalizer.ERROR) {
+                throw error("Character not in alphabet");
+            }
         }
-        return ans;
+        return end;
+    }
+
+    /** Set the normalizer applied to messages by convert(String) to
+     *  NORMALIZER, whose alphabet must be mine. */
+    void setNormalizer(Normalizer normalizer) {
+        _normalizer = normalizer;
+    }
+
+    /** Returns the normalizer applied to messages by convert(String).
+     *  Unless set otherwise, it drops spaces, folds lower case and
+     *  reports other characters outside my alphabet as errors. */
+    Normalizer getNormalizer() {
+        if (_normalizer == null) {
+            _normalizer = new Normalizer(_alphabet);
+        }
+        return _normalizer;
+    }
+
+    /** Convert DATA[FROM .. TO - 1] in place, updating the state of the
+     *  rotors accordingly.  Each byte, taken as unsigned, is the index of
+     *  a character in my alphabet, which can therefore have at most 256
+     *  characters. */
+    void convert(byte[] data, int from, int to) {
+        if (_alphabet.size() > BYTE_SYMBOLS) {
+            throw error("Alphabet too large for byte conversion");
+        } else if (_alphabet.size() < BYTE_SYMBOLS) {
+            for (int i = from; i < to; i++) {
+                if ((data[i] & 0xff) >= _alphabet.size()) {
+                    throw error("Index not in alphabet");
+                }
+            }
+        }
+        engine(to - from).convert(data, from, to);
+    }
+
+    /** Use engines of kind KIND from now on. */
+    void setEngine(ConversionEngine.Kind kind) {
+        dropEngine();
+        _engineKind = kind;
+    }
+
+    /** Report each change in the kind of engine used on LOG, or not at
+     *  all if LOG is null. */
+    void setLog(PrintStream log) {
+        _log = log;
+    }
+
+    /** Returns the kind of engine to use for converting VOLUME
+     *  characters with my current rotors.  Unless told otherwise, I use
+     *  a FlatMachine when building its tables, which takes time in
+     *  proportion to the number of slots times the size of the alphabet,
+     *  costs less than the time it saves.  I never choose a
+     *  CompiledMachine myself: compiling one takes about a second, and
+     *  once built it has measured no faster than a FlatMachine. */
+    ConversionEngine.Kind choose(long volume) {
+        if (_engineKind != ConversionEngine.Kind.AUTO) {
+            return _engineKind;
+        }
+        long tables = (long) _rotors.size() * _alphabet.size();
+        return volume >= tables * BREAK_EVEN
+            ? ConversionEngine.Kind.TABLE : ConversionEngine.Kind.INTERPRETIVE;
+    }
+
+    /** Returns my engine, about to convert VOLUME characters and so
+     *  holding my current settings from now on.  The engine is chosen
+     *  for the characters converted with my current rotors so far and
+     *  these VOLUME more, since only a change of rotors makes a
+     *  FlatMachine's tables useless.  How many more will follow is not
+     *  known, so an InterpretiveEngine is replaced by a FlatMachine once
+     *  that count reaches the point at which the tables would have paid
+     *  for themselves, which costs at most about twice what the better
+     *  choice, made in advance, would have.  I build a new engine
+     *  whenever the kind chosen differs from the kind I have. */
+    private ConversionEngine engine(long volume) {
+        if (_rotors.isEmpty()) {
+            throw error("No rotors inserted");
+        }
+        long total = _converted + volume;
+        ConversionEngine.Kind kind = choose(total);
+        _converted = total;
+        if (_engine == null || kind != _built) {
+            saveSettings();
+            switch (kind) {
+            case TABLE:
+                _engine = FlatMachine.of(this);
+                break;
+            case COMPILED:
+                _engine = MachineCompiler.compile(this);
+                break;
+            default:
+                _engine = new InterpretiveEngine(_rotors, _plugboard);
+                break;
+            }
+            _built = kind;
+            if (_log != null && kind != _logged) {
+                _log.printf("Engine: %s (%s, for %d slots, %d characters"
+                            + " in the alphabet and %d converted with"
+                            + " these rotors)%n",
+                            kind.toString().toLowerCase(),
+                            _engineKind == ConversionEngine.Kind.AUTO
+                            ? "chosen" : "requested",
+                            _rotors.size(), _alphabet.size(), total);
+                _logged = kind;
+            }
+        } else if (_engineStale) {
+            _engine.setPositions(_rotors);
+        }
+        _engineStale = false;
+        _rotorsStale = true;
+        return _engine;
     }
 
+    /** Set my rotors to the settings of my engine, if it has changed
+     *  them. */
+    private void saveSettings() {
+        if (_rotorsStale) {
+            for (int k = 1; k < _rotors.size(); k++) {
+                _rotors.get(k).set(_engine.position(k));
+            }
+            _rotorsStale = false;
+        }
+    }
+
+    /** Set my rotors to the settings of my engine and discard it, as
+     *  when my rotors or plugboard are about to change. */
+    private void dropEngine() {
+        saveSettings();
+        _engine = null;
+        _converted = 0;
+    }
+
+    /** Least number of characters to convert, per entry in the tables
+     *  of a FlatMachine, for which building one pays.  Measured on a
+     *  freshly started JVM, building the tables and converting with them
+     *  first beats converting with the rotors at between about a half
+     *  and two characters per entry, from 26 to 30000 characters in the
+     *  alphabet. */
+    static final int BREAK_EVEN = 1;
+
+    /** Number of distinct byte values. */
+    static final int BYTE_SYMBOLS = 256;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -182,4 +468,39 @@ class Machine {
 
     /** The pluboard permutation of this machine. */
     private Permutation _plugboard;
+
+    /** Classifies the characters of messages, or null if not yet
+     *  needed. */
+    private Normalizer _normalizer;
+
+    /** The engine converting with my rotors and plugboard, or null if
+     *  they have changed since it was chosen.  While I convert, the
+     *  settings are kept by the engine alone, and copied to the rotors
+     *  only when something reads them, so that converting a character
+     *  costs no more than the engine takes. */
+    private ConversionEngine _engine;
+
+    /** The kind of my engine, if I have one. */
+    private ConversionEngine.Kind _built;
+
+    /** True iff my engine has changed the settings since they were last
+     *  copied to my rotors. */
+    private boolean _rotorsStale;
+
+    /** True iff my rotors' settings may have changed since they were last
+     *  copied to my engine. */
+    private boolean _engineStale;
+
+    /** The kind of engine to use. */
+    private ConversionEngine.Kind _engineKind = ConversionEngine.Kind.AUTO;
+
+    /** The number of characters converted, or being converted, since my
+     *  engine was last discarded. */
+    private long _converted;
+
+    /** Where to report the choice of engine, or null. */
+    private PrintStream _log;
+
+    /** The kind of engine last reported on _log, or null. */
+    private ConversionEngine.Kind _logged;
 }
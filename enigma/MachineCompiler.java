@@ -0,0 +1,305 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import static enigma.EnigmaException.*;
+
+/** Generates, compiles and loads CompiledMachine subclasses specialised
+ *  to a particular reflector and rotor order.  The generated source is
+ *  compiled in memory with the platform's Java compiler and defined in
+ *  this package, so it can only be used where a full JDK is present.
+ *  Each class is a hidden class whose class data holds its wirings,
+ *  which its static final fields fetch through wirings(), so alphabets
+ *  of any size compile.  The classes for the CACHE_SIZE rotor sets most
+ *  recently compiled are kept; the JVM may unload any others once no
+ *  machine uses them.
+ *  @author Nicholas Moy
+ */
+class MachineCompiler {
+
+    /** Returns a compiled machine with the rotors, settings and plugboard
+     *  that MACHINE currently has. */
+    static CompiledMachine compile(Machine machine) {
+        CompiledMachine ans = compile(Wiring.of(machine.getRotors()));
+        int[] posns = new int[machine.getRotors().size()];
+        for (int k = 1; k < posns.length; k++) {
+            posns[k] = machine.getRotors().get(k).setting();
+        }
+        ans.setPositions(posns);
+        ans.setPlugboard(Wiring.table(machine.getPlugboard()));
+        return ans;
+    }
+
+    /** Returns a new compiled machine whose slots hold the rotors
+     *  described by ROTORS, the first being the reflector, with all
+     *  rotors at setting 0 and no plugboard. */
+    static CompiledMachine compile(Wiring[] rotors) {
+        String key = signature(rotors);
+        MethodHandle maker = CLASSES.get(key);
+        if (maker == null) {
+            maker = load(rotors);
+            MethodHandle other = CLASSES.putIfAbsent(key, maker);
+            if (other != null) {
+                maker = other;
+            }
+        }
+        CompiledMachine ans;
+        try {
+            ans = (CompiledMachine) maker.invoke();
+        } catch (Throwable excp) {
+            throw error("could not create compiled machine: %s", excp);
+        }
+        int[] identity = new int[rotors[0].size()];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        ans.setPlugboard(identity);
+        return ans;
+    }
+
+    /** Returns the source of the CompiledMachine subclass NAME for
+     *  ROTORS, which it expects to find in its class data. */
+    static String source(String name, Wiring[] rotors) {
+        int last = rotors.length - 1;
+        StringBuilder src = new StringBuilder();
+        src.append("package enigma;\n")
+            .append("final class ").append(name)
+            .append(" extends CompiledMachine {\n")
+            .append("    private static final int S = ")
+            .append(rotors[0].size()).append(";\n")
+            .append("    private static final Wiring[] W =\n")
+            .append("        MachineCompiler.wirings(")
+            .append("java.lang.invoke.MethodHandles.lookup());\n");
+        for (int i = 0; i <= last; i++) {
+            constant(src, i, "int", "F", "forward");
+            if (i > 0) {
+                constant(src, i, "int", "B", "backward");
+                constant(src, i, "boolean", "N", "notches");
+            }
+        }
+        for (int i = 1; i <= last; i++) {
+            src.append("    private int p").append(i).append(";\n");
+        }
+        src.append("    @Override void setPositions(int[] posns) {\n");
+        for (int i = 1; i <= last; i++) {
+            src.append(String.format("        p%d = posns[%d];%n", i, i));
+        }
+        src.append("    }\n")
+            .append("    @Override int[] positions(int[] posns) {\n");
+        for (int i = 1; i <= last; i++) {
+            src.append(String.format("        posns[%d] = p%d;%n", i, i));
+        }
+        src.append("        return posns;\n    }\n")
+            .append("    @Override public int position(int k) {\n")
+            .append("        switch (k) {\n");
+        for (int i = 1; i <= last; i++) {
+            src.append(String.format("        case %d: return p%d;%n", i, i));
+        }
+        src.append("        default: return 0;\n        }\n    }\n")
+            .append("    @Override public int convert(int c) {\n");
+        stepping(src, rotors);
+        src.append("        int k;\n        c = _plugboard[c];\n");
+        for (int i = last; i > 0; i--) {
+            through(src, "F" + i, i);
+        }
+        src.append("        c = F0[c];\n");
+        for (int i = 1; i <= last; i++) {
+            through(src, "B" + i, i);
+        }
+        src.append("        return _plugboard[c];\n    }\n}\n");
+        return src.toString();
+    }
+
+    /** Append to SRC the straight-line code that advances the rotors
+     *  ROTORS as Machine does, deciding every move before making any. */
+    private static void stepping(StringBuilder src, Wiring[] rotors) {
+        int last = rotors.length - 1;
+        StringBuilder moves = new StringBuilder();
+        for (int i = 1; i < last; i++) {
+            String test = "";
+            if (rotors[i - 1].rotates()) {
+                test = String.format("N%d[p%d]", i, i);
+            }
+            if (rotors[i].rotates()) {
+                test += String.format("%sN%d[p%d]", test.isEmpty() ? ""
+                                      : " || ", i + 1, i + 1);
+            }
+            if (!test.isEmpty()) {
+                src.append(String.format("        boolean s%d = %s;%n",
+                                         i, test));
+                moves.append(String.format(
+                    "        if (s%d && ++p%d == S) {%n"
+                    + "            p%d = 0;%n        }%n", i, i, i));
+            }
+        }
+        src.append(moves);
+        if (last > 0 && rotors[last].rotates()) {
+            src.append(String.format("        if (++p%d == S) {%n"
+                                     + "            p%d = 0;%n        }%n",
+                                     last, last));
+        }
+    }
+
+    /** Append to SRC the code passing c through the table named TABLE of
+     *  the rotor in slot K. */
+    private static void through(StringBuilder src, String table, int k) {
+        src.append(String.format("        k = c + p%d;%n", k))
+            .append("        if (k >= S) {\n            k -= S;\n        }\n")
+            .append(String.format("        c = %s[k] - p%d;%n", table, k))
+            .append("        if (c < 0) {\n            c += S;\n        }\n");
+    }
+
+    /** Append to SRC the declaration of the constant array of TYPE
+     *  named PREFIX followed by K, holding the table returned by
+     *  METHOD of the wiring in slot K. */
+    private static void constant(StringBuilder src, int k, String type,
+                                 String prefix, String method) {
+        src.append(String.format(
+            "    private static final %s[] %s%d = W[%d].%s();%n",
+            type, prefix, k, k, method));
+    }
+
+    /** Returns the wirings in the class data of the compiled class whose
+     *  own full-privilege lookup is LOOKUP. */
+    static Wiring[] wirings(MethodHandles.Lookup lookup) {
+        try {
+            return MethodHandles.classData(lookup, "_", Wiring[].class);
+        } catch (IllegalAccessException excp) {
+            throw error("could not load compiled machine");
+        }
+    }
+
+    /** Returns a string that differs for rotor sets that would compile
+     *  differently. */
+    private static String signature(Wiring[] rotors) {
+        StringBuilder ans = new StringBuilder();
+        for (Wiring w : rotors) {
+            ans.append(w.rotates()).append(Arrays.toString(w.forward()))
+                .append(Arrays.toString(w.notches()));
+        }
+        return ans.toString();
+    }
+
+    /** Returns the constructor of a new class compiled for ROTORS. */
+    private static MethodHandle load(Wiring[] rotors) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw error("No Java compiler available to compile machine");
+        }
+        String name = "GeneratedMachine";
+        DiagnosticCollector<JavaFileObject> diagnostics =
+            new DiagnosticCollector<>();
+        ClassOutput output = new ClassOutput(
+            javac.getStandardFileManager(diagnostics, null, null));
+        boolean ok = javac.getTask(
+            null, output, diagnostics,
+            List.of("-classpath", System.getProperty("java.class.path")),
+            null, List.of(new Source(name, source(name, rotors))))
+            .call();
+        if (!ok || !output.classes().containsKey("enigma." + name)) {
+            throw error("could not compile machine: %s",
+                        diagnostics.getDiagnostics());
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(
+                    output.classes().get("enigma." + name).toByteArray(),
+                    rotors.clone(), true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                                          MethodType.methodType(void.class))
+                .asType(MethodType.methodType(CompiledMachine.class));
+        } catch (IllegalAccessException | NoSuchMethodException excp) {
+            throw error("could not load compiled machine");
+        }
+    }
+
+    /** Generated source held in memory. */
+    private static class Source extends SimpleJavaFileObject {
+
+        /** The source TEXT of the class enigma.NAME. */
+        Source(String name, String text) {
+            super(URI.create("string:///enigma/" + name + ".java"),
+                  Kind.SOURCE);
+            _text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreErrors) {
+            return _text;
+        }
+
+        /** My text. */
+        private final String _text;
+    }
+
+    /** A file manager that keeps compiled classes in memory. */
+    private static class ClassOutput
+        extends ForwardingJavaFileManager<JavaFileManager> {
+
+        /** A file manager that reads through FILES. */
+        ClassOutput(JavaFileManager files) {
+            super(files);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(
+            Location location, String className, JavaFileObject.Kind kind,
+            FileObject sibling) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            _classes.put(className, bytes);
+            return new SimpleJavaFileObject(
+                URI.create("mem:///" + className + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return bytes;
+                }
+            };
+        }
+
+        /** Returns the class files written so far, by class name. */
+        Map<String, ByteArrayOutputStream> classes() {
+            return _classes;
+        }
+
+        /** Class files written so far, by class name. */
+        private final Map<String, ByteArrayOutputStream> _classes =
+            new HashMap<>();
+    }
+
+    /** The largest number of compiled classes kept. */
+    static final int CACHE_SIZE = 16;
+
+    /** Constructors of the classes most recently compiled, by
+     *  signature(), least recently used first.  Compiling takes long
+     *  enough that it is done outside this map's lock; two threads
+     *  compiling the same rotor set at once each compile it, and the
+     *  first to finish wins. */
+    private static final Map<String, MethodHandle> CLASSES =
+        Collections.synchronizedMap(
+            new LinkedHashMap<>(CACHE_SIZE + 1, 1.0f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<String, MethodHandle> e) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+}
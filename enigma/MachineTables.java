@@ -0,0 +1,213 @@
+package enigma;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A configuration compiled into a file of lookup tables, so that the
+ *  many processes converting messages with one configuration need not
+ *  each parse it.  The file holds the alphabet, the numbers of slots and
+ *  pawls and, for each rotor, its name, kind, notches and permutation
+ *  table, preceded by the length and checksum of the configuration file
+ *  it was built from.  It is mapped read-only, so that every process
+ *  reads the same pages of the page cache, and is rebuilt whenever it
+ *  is missing, damaged or built from a different configuration.  It is
+ *  written to a temporary file that is then renamed over it, so that a
+ *  process never maps a partly written file.
+ *  @author Nicholas Moy
+ */
+class MachineTables {
+
+    /** Returns the machine configured by the configuration file named
+     *  CONFIG, taken from the tables in the file named TABLES if they
+     *  were built from it, and otherwise read from CONFIG and then saved
+     *  in TABLES if possible.  Failing to save them does not matter to
+     *  this run, which only loses the chance to help later ones. */
+    static Machine load(String config, String tables) {
+        byte[] text;
+        try {
+            text = Files.readAllBytes(new File(config).toPath());
+        } catch (IOException excp) {
+            throw error("could not open %s", config);
+        }
+        Machine ans = read(tables, text.length, checksum(text));
+        if (ans == null) {
+            ans = Main.configure(config);
+            try {
+                write(tables, ans, text.length, checksum(text));
+            } catch (EnigmaException excp) {
+                /* Use the machine just read. */
+            }
+        }
+        return ans;
+    }
+
+    /** Returns the machine in the tables file named NAME, or null if it
+     *  does not exist, is damaged or was not built from a configuration
+     *  file of LENGTH bytes with checksum CRC. */
+    static Machine read(String name, long length, int crc) {
+        if (!new File(name).isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(
+                 new File(name).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getLong() != length
+                || buf.getInt() != crc) {
+                return null;
+            }
+            String chars = string(buf);
+            Alphabet alphabet = alphabet(chars);
+            int numRotors = buf.getInt();
+            int pawls = buf.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (int n = buf.getInt(); n > 0; n -= 1) {
+                rotors.add(rotor(buf, alphabet));
+            }
+            return new Machine(alphabet, numRotors, pawls, rotors);
+        } catch (IOException | BufferUnderflowException
+                 | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Save the configuration of MACHINE, read from a configuration file
+     *  of LENGTH bytes with checksum CRC, in the tables file named
+     *  NAME.  Processes building the same file at once each write their
+     *  own temporary file, and the last to finish wins.  The temporary
+     *  file is removed if anything goes wrong. */
+    static void write(String name, Machine machine, long length, int crc) {
+        Path target = new File(name).toPath();
+        Path temp = new File(name + "." + ProcessHandle.current().pid()
+                             + ".tmp").toPath();
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new FileOutputStream(temp.toFile()))) {
+                Alphabet alphabet = machine.getAlphabet();
+                out.writeInt(MAGIC);
+                out.writeLong(length);
+                out.writeInt(crc);
+                StringBuilder chars = new StringBuilder();
+                for (int i = 0; i < alphabet.size(); i++) {
+                    chars.append(alphabet.toChar(i));
+                }
+                string(out, chars.toString());
+                out.writeInt(machine.numRotors());
+                out.writeInt(machine.numPawls());
+                out.writeInt(machine.getAllRotors().size());
+                for (Rotor rotor : machine.getAllRotors()) {
+                    rotor(out, rotor);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write tables %s", name);
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException excp) {
+                /* Leave it; the next write with this pid replaces it. */
+            }
+        }
+    }
+
+    /** Returns the checksum of TEXT. */
+    private static int checksum(byte[] text) {
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        return (int) crc.getValue();
+    }
+
+    /** Returns the alphabet whose characters, in order, are CHARS. */
+    private static Alphabet alphabet(String chars) {
+        for (int i = 1; i < chars.length(); i++) {
+            if (chars.charAt(i) != chars.charAt(i - 1) + 1) {
+                return new CharacterRange(chars);
+            }
+        }
+        if (chars.isEmpty()) {
+            throw error("Alphabet cannot be empty");
+        }
+        return new CharacterRange(chars.charAt(0),
+                                  chars.charAt(chars.length() - 1));
+    }
+
+    /** Write ROTOR to OUT: its name, its kind (M, N or R, as in
+     *  configuration files), its notches and its permutation table. */
+    private static void rotor(DataOutputStream out, Rotor rotor)
+        throws IOException {
+        Alphabet alphabet = rotor.alphabet();
+        string(out, rotor.name());
+        out.writeChar(rotor.rotates() ? 'M' : rotor.reflecting() ? 'R' : 'N');
+        StringBuilder notches = new StringBuilder();
+        for (int i = 0; i < alphabet.size(); i++) {
+            if (rotor.hasNotchAt(i)) {
+                notches.append(alphabet.toChar(i));
+            }
+        }
+        string(out, notches.toString());
+        for (int i = 0; i < alphabet.size(); i++) {
+            out.writeInt(rotor.wiring().permute(i));
+        }
+    }
+
+    /** Returns the rotor over ALPHABET read from BUF, as written by
+     *  rotor(DataOutputStream, Rotor). */
+    private static Rotor rotor(ByteBuffer buf, Alphabet alphabet) {
+        String name = string(buf);
+        char kind = buf.getChar();
+        String notches = string(buf);
+        int[] forward = new int[alphabet.size()];
+        for (int i = 0; i < forward.length; i++) {
+            forward[i] = buf.getInt();
+        }
+        Permutation perm = new Permutation(forward, alphabet);
+        switch (kind) {
+        case 'M':
+            return new MovingRotor(name, perm, notches);
+        case 'R':
+            return new Reflector(name, perm);
+        case 'N':
+            return new FixedRotor(name, perm);
+        default:
+            throw error("Bad rotor kind in tables");
+        }
+    }
+
+    /** Write S to OUT as its length followed by its characters. */
+    private static void string(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Returns the string read from BUF, as written by
+     *  string(DataOutputStream, String). */
+    private static String string(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0 || n > buf.remaining() / Character.BYTES) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[n];
+        buf.asCharBuffer().get(chars);
+        buf.position(buf.position() + n * Character.BYTES);
+        return new String(chars);
+    }
+
+    /** Identifies tables files. */
+    private static final int MAGIC = 0x454e5442;
+}
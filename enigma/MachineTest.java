@@ -0,0 +1,249 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the state of Machines.
+ *  @author Nicholas Moy
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Returns a machine with reflector B followed by NAMES.length - 1
+     *  moving rotors wired as rotor I, all inserted, filling in NAMES
+     *  with their names. */
+    private static Machine machine(String[] names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        names[0] = "B";
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        for (int k = 1; k < names.length; k++) {
+            names[k] = "R" + k;
+            rotors.add(new MovingRotor(names[k],
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        }
+        Machine m = new Machine(UPPER, names.length, names.length - 1,
+                                rotors);
+        m.insertRotors(names);
+        return m;
+    }
+
+    /** Returns the settings of M's rotors other than the reflector. */
+    private static String settings(Machine m) {
+        StringBuilder ans = new StringBuilder();
+        for (int k = 1; k < m.getRotors().size(); k++) {
+            ans.append(UPPER.toChar(m.getRotors().get(k).setting()));
+        }
+        return ans.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    /** Tests that a snapshot in a single long restores a machine. */
+    @Test
+    public void checkPackedState() {
+        Machine m = machine(new String[5]);
+        m.setRotors("AXLE");
+        assertEquals(1, m.stateWords());
+        long packed = m.packedState();
+        long[] state = m.saveState();
+        String expected = m.convert("FROMHISSHOULDER");
+        assertNotEquals("AXLE", settings(m));
+        m.restoreState(packed);
+        assertEquals("AXLE", settings(m));
+        assertEquals(expected, m.convert("FROMHISSHOULDER"));
+        m.restoreState(state);
+        assertEquals("AXLE", settings(m));
+        assertEquals(expected, m.convert("FROMHISSHOULDER"));
+    }
+
+    /** Tests that snapshots too large for a long take several, and
+     *  restore a machine. */
+    @Test
+    public void checkWideState() {
+        assertEquals(1, Machine.stateWords(13, 26));
+        assertEquals(2, Machine.stateWords(14, 26));
+        assertEquals(3, Machine.stateWords(8, 1 << 20));
+        Machine m = machine(new String[14]);
+        m.setRotors("ABCDEFGHIJKLZ");
+        long[] state = m.saveState();
+        assertEquals(2, state.length);
+        String expected = m.convert("HIAWATHA");
+        m.restoreState(state);
+        assertEquals("ABCDEFGHIJKLZ", settings(m));
+        assertEquals(expected, m.convert("HIAWATHA"));
+        try {
+            m.packedState();
+            fail("state should not fit in a long");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Tests ring settings against the standard M3 test vectors: the
+     *  thin reflector B with Beta at A acts as reflector B, and with all
+     *  rings at A, AAAAA at settings AAA encrypts to BDZGO, and with
+     *  rings at B to EWTYX.  A settings line without rings resets
+     *  them. */
+    @Test
+    public void checkRings() {
+        Machine m = navalMachine(5, 3, "B", "Beta", "I", "II", "III");
+        ArrayList<Rotor> rotors = m.getAllRotors();
+        Main.setUp(m, "* B Beta I II III AAAA");
+        assertEquals("BDZGO", m.convert("AAAAA"));
+        Main.setUp(m, "* B Beta I II III AAAA ABBB");
+        assertEquals("EWTYX", m.convert("AAAAA"));
+        assertEquals("AAAF", settings(m));
+        assertEquals(1, rotors.get(4).ring());
+        Main.setUp(m, "* B Beta I II III AAAA ABBB (AB)");
+        String plugged = m.convert("BBBBB");
+        Main.setUp(m, "* B Beta I II III AAAA");
+        assertEquals("BDZGO", m.convert("AAAAA"));
+        assertEquals(0, rotors.get(4).ring());
+        Main.setUp(m, "* B Beta I II III AAAA ABBB (AB)");
+        assertEquals(plugged, m.convert("BBBBB"));
+        assertEquals(0, rotors.get(4).copy().ring());
+    }
+
+    /** Tests that both ConversionEngines convert alike, that the choice
+     *  between them follows the volume expected, and that changes of
+     *  engine are reported. */
+    @Test
+    public void checkEngines() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            msg.append((char) ('A' + (i * 7 + i / 26) % 26));
+        }
+        ConversionEngine.Kind[] kinds = ConversionEngine.Kind.values();
+        String[] results = new String[kinds.length];
+        String[] settings = new String[kinds.length];
+        for (int k = 0; k < kinds.length; k++) {
+            Machine m = machine(new String[5]);
+            m.setRotors("AXLE");
+            m.setEngine(kinds[k]);
+            results[k] = m.convert(msg.substring(0, 10))
+                + m.convert(msg.substring(10)) + m.convert(3);
+            settings[k] = settings(m);
+        }
+        for (int k = 1; k < kinds.length; k++) {
+            assertEquals(results[0], results[k]);
+            assertEquals(settings[0], settings[k]);
+        }
+
+        Machine m = machine(new String[5]);
+        assertEquals(ConversionEngine.Kind.INTERPRETIVE, m.choose(10));
+        assertEquals(ConversionEngine.Kind.TABLE, m.choose(100000));
+        m.setEngine(ConversionEngine.Kind.INTERPRETIVE);
+        assertEquals(ConversionEngine.Kind.INTERPRETIVE, m.choose(100000));
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        m = machine(new String[5]);
+        m.setLog(new PrintStream(log, true));
+        m.convert(msg.substring(0, 10));
+        m.convert(msg.substring(0, 10));
+        m.convert(msg.toString());
+        String[] lines = log.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("Engine: interpretive (chosen"));
+        assertTrue(lines[1].startsWith("Engine: table (chosen"));
+    }
+
+    /** Tests that the settings an engine keeps while converting a
+     *  character at a time are seen by, and follow changes made through,
+     *  getSettings, saveState, restoreState and getRotors. */
+    @Test
+    public void checkLazySettings() {
+        for (ConversionEngine.Kind kind : ConversionEngine.Kind.values()) {
+            Machine m = machine(new String[5]), n = machine(new String[5]);
+            m.setEngine(kind);
+            m.setRotors("AXLE");
+            n.setRotors("AXLE");
+            for (int i = 0; i < 700; i++) {
+                m.convert(i % 26);
+                n.convert(String.valueOf(UPPER.toChar(i % 26)));
+            }
+            assertEquals(n.getSettings(), m.getSettings());
+            long state = m.packedState();
+            int[] first = new int[50];
+            for (int i = 0; i < first.length; i++) {
+                first[i] = m.convert(i % 26);
+            }
+            m.restoreState(state);
+            for (int i = 0; i < first.length; i++) {
+                assertEquals(first[i], m.convert(i % 26));
+            }
+            m.getRotors().get(4).set(0);
+            n.setRotors(settings(m));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(n.convert(i % 26), m.convert(i % 26));
+            }
+            assertEquals(settings(n), settings(m));
+        }
+    }
+
+    /** Tests that a settings line naming the rotors already in place
+     *  keeps the engine, which must then follow the new plugboard, and
+     *  that the choice of engine counts only the characters converted
+     *  with the current rotors. */
+    @Test
+    public void checkEngineKept() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            msg.append((char) ('A' + (i * 5 + i / 26) % 26));
+        }
+        String[] lines = {
+            "* B R1 R2 R3 R4 AXLE (AB)", "* B R1 R2 R3 R4 QRST (CD) (EF)",
+            "* B R4 R3 R2 R1 AAAA"
+        };
+        String[] msgs = { msg.toString(), "HELLO", "HELLO" };
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Machine m = machine(new String[5]), n = machine(new String[5]);
+        m.setLog(new PrintStream(log, true));
+        n.setEngine(ConversionEngine.Kind.INTERPRETIVE);
+        for (int k = 0; k < lines.length; k++) {
+            Main.setUp(m, lines[k]);
+            Main.setUp(n, lines[k]);
+            assertEquals(n.convert(msgs[k]), m.convert(msgs[k]));
+            assertEquals(settings(n), settings(m));
+        }
+        String[] reported = log.toString().split("\n");
+        assertEquals(2, reported.length);
+        assertTrue(reported[0].startsWith("Engine: table (chosen"));
+        assertTrue(reported[1].startsWith("Engine: interpretive (chosen"));
+    }
+
+    /** Tests that converting with no rotors inserted, as after a bad
+     *  settings line, reports an error. */
+    @Test
+    public void checkNoRotors() {
+        Machine m = new Machine(UPPER, 5, 3, new ArrayList<>());
+        for (ConversionEngine.Kind kind : ConversionEngine.Kind.values()) {
+            m.setEngine(kind);
+            try {
+                m.convert("HELLO");
+                fail("conversion without rotors should fail");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        try {
+            Main.setUp(m, "* B BETA I II III AAAA (AB");
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -1,12 +1,19 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.regex.Pattern;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +30,30 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  These may be preceded by options saying what to do with message
+     *  characters outside the alphabet: --drop leaves them out, --pass
+     *  copies them unconverted and --strict (the default) reports them as
+     *  errors.  Lower case is converted as upper case unless --no-fold is
+     *  given.  Spaces are always ignored.  The option --index FILE
+     *  writes a SeekIndex of the output to FILE, from which DecryptRange
+     *  can decrypt any part of the output.  The option --checkpoint FILE,
+     *  which needs both input and output files, periodically saves the
+     *  progress of the run in FILE, removing it when the run finishes;
+     *  with --resume as well, a run continues from the checkpoint in FILE
+     *  if there is one, appending to the output what an uninterrupted
+     *  run would have written.  The option --tables FILE takes the
+     *  configuration from the MachineTables in FILE, building FILE from
+     *  the configuration file first if it is missing or out of date.
+     *  With --configs N, a line "@ NAME" in the input changes to the
+     *  configuration file NAME, relative to the directory of ARGS[0],
+     *  and must be followed by a settings line; up to N configurations
+     *  are kept in a ConfigCache, so that changing back to one need not
+     *  read it again.  The option --engine KIND, where KIND is auto (the
+     *  default), interpretive or table, says which ConversionEngine to
+     *  convert with, and --verbose reports the engine chosen on the
+     *  standard error.  The compiled engine is not offered, so that Main
+     *  never generates code at run time. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,25 +66,148 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        args = readOptions(args);
         if (args.length < 1 || args.length > 3) {
-            error("Only 1, 2, or 3 command-line arguments allowed");
+            throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        if (_tablesName == null) {
+            _config = getInput(args[0]);
+        }
+        if (_cacheSize > 0 && (_tablesName != null || _indexName != null
+                               || _checkpointName != null)) {
+            throw error("--configs cannot be used with --tables, --index"
+                        + " or --checkpoint");
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _inputStream = getInputStream(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _inputStream = System.in;
         }
 
-        if (args.length > 2) {
+        if (_checkpointName != null) {
+            if (args.length < 3) {
+                throw error("Checkpoints need input and output files");
+            } else if (_resume && _indexName != null) {
+                throw error("Cannot resume while writing an index");
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+            try {
+                _outputFile = new FileOutputStream(args[2], _resume);
+            } catch (IOException excp) {
+                throw error("could not open %s", args[2]);
+            }
+            _output = new PrintStream(_outputFile);
+        } else if (_resume) {
+            throw error("--resume needs --checkpoint");
+        } else if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
             _output = System.out;
         }
     }
 
+    /** A Main that converts the messages on INPUT onto OUTPUT, treating
+     *  message characters outside the alphabet according to POLICY and
+     *  folding lower case to upper case iff FOLD.  It has no
+     *  configuration file of its own, being given its machine by
+     *  convert(). */
+    Main(InputStream input, PrintStream output, Normalizer.Policy policy,
+         boolean fold) {
+        _inputStream = input;
+        _output = output;
+        _policy = policy;
+        _fold = fold;
+    }
+
+    /** Set the options given at the start of ARGS and return the rest
+     *  of ARGS. */
+    private String[] readOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k++) {
+            switch (args[k]) {
+            case "--drop":
+                _policy = Normalizer.Policy.DROP;
+                break;
+            case "--pass":
+                _policy = Normalizer.Policy.PASS;
+                break;
+            case "--strict":
+                _policy = Normalizer.Policy.ERROR;
+                break;
+            case "--no-fold":
+                _fold = false;
+                break;
+            case "--index":
+                if (k + 1 == args.length) {
+                    throw error("No index file given");
+                }
+                k += 1;
+                _indexName = args[k];
+                break;
+            case "--checkpoint":
+                if (k + 1 == args.length) {
+                    throw error("No checkpoint file given");
+                }
+                k += 1;
+                _checkpointName = args[k];
+                break;
+            case "--resume":
+                _resume = true;
+                break;
+            case "--configs":
+                k += 1;
+                try {
+                    _cacheSize = Integer.parseInt(args[k]);
+                } catch (NumberFormatException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    throw error("--configs needs a number");
+                }
+                if (_cacheSize < 1) {
+                    throw error("Bad number of configurations");
+                }
+                break;
+            case "--engine":
+                k += 1;
+                try {
+                    _engineKind = ConversionEngine.Kind.valueOf(
+                        args[k].toUpperCase());
+                } catch (IllegalArgumentException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    _engineKind = null;
+                }
+                if (_engineKind == null
+                    || _engineKind == ConversionEngine.Kind.COMPILED) {
+                    throw error("--engine needs auto, interpretive or"
+                                + " table");
+                }
+                break;
+            case "--verbose":
+                _verbose = true;
+                break;
+            case "--tables":
+                if (k + 1 == args.length) {
+                    throw error("No tables file given");
+                }
+                k += 1;
+                _tablesName = args[k];
+                break;
+            default:
+                throw error("Unknown option %s", args[k]);
+            }
+        }
+        return Arrays.copyOfRange(args, k, args.length);
+    }
+
+    /** Return an Enigma machine configured from the configuration file
+     *  named NAME, for use by the other tools in this package. */
+    static Machine configure(String name) {
+        return new Main(new String[] { name }).readConfig();
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -64,6 +217,15 @@ public final class Main {
         }
     }
 
+    /** Return an InputStream reading from the file named NAME. */
+    private InputStream getInputStream(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -75,26 +237,125 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  If the machine's alphabet is all ASCII, the
+     *  input is instead processed as raw bytes by an AsciiConverter,
+     *  unless the input may change configuration.  With --tables, the
+     *  machine comes from the tables file instead. */
     private void process() {
+        if (_tablesName != null) {
+            convert(MachineTables.load(_configName, _tablesName));
+            return;
+        }
         Machine M = readConfig();
-        String line = "";
-        if (_input.hasNextLine()) {
-            line = _input.nextLine();
+        if (_cacheSize > 0) {
+            Path config = Paths.get(_configName).toAbsolutePath();
+            _configs = new ConfigCache(_cacheSize, config.getParent(),
+                                       _policy, _fold);
+            _configs.put(config.toString(), M);
+        }
+        convert(M);
+    }
+
+    /** Apply M, which has just been configured, to the messages in
+     *  _input, sending the results to _output, as described at
+     *  process(). */
+    void convert(Machine M) {
+        M.setNormalizer(new Normalizer(M.getAlphabet(), _policy, _fold));
+        setEngine(M);
+        if (_indexName != null) {
+            _index = new SeekIndex(_indexName, M);
+        }
+        try {
+            if (_configs != null) {
+                processLines(M);
+            } else if (AsciiConverter.accepts(M.getAlphabet())) {
+                AsciiConverter converter =
+                    new AsciiConverter(M, _inputStream, _output);
+                converter.setIndex(_index);
+                if (_checkpointName == null) {
+                    converter.process();
+                } else {
+                    processWithCheckpoints(M, converter);
+                }
+            } else if (_checkpointName != null) {
+                throw error("Checkpoints need an ASCII alphabet");
+            } else {
+                processLines(M);
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        } finally {
+            if (_index != null) {
+                _index.close();
+            }
+        }
+    }
+
+    /** Set the ConversionEngine of M, or its choice of one, as my
+     *  options say. */
+    private void setEngine(Machine M) {
+        if (_engineKind != null) {
+            M.setEngine(_engineKind);
+        }
+        if (_verbose) {
+            M.setLog(System.err);
+        }
+    }
+
+    /** Run CONVERTER, which converts with M, taking checkpoints in the
+     *  file _checkpointName, first resuming from the checkpoint there if
+     *  asked to. */
+    private void processWithCheckpoints(Machine M, AsciiConverter converter)
+        throws IOException {
+        JobCheckpoint checkpoints =
+            new JobCheckpoint(_checkpointName, M, _inputName, _outputName,
+                              _outputFile);
+        JobCheckpoint.State state = null;
+        if (_resume) {
+            state = JobCheckpoint.read(_checkpointName, _inputName,
+                                       _outputName);
         }
-        if (!line.isEmpty() && line.charAt(0) == '*') {
-            setUp(M, line);
+        if (state == null) {
+            _outputFile.getChannel().truncate(0);
         } else {
+            ((FileInputStream) _inputStream).getChannel()
+                .position(state.inputOffset());
+            _outputFile.getChannel().truncate(state.outputOffset());
+            state.restore(M);
+            converter.resume(state);
+            checkpoints.start(state.inputOffset());
+        }
+        converter.setCheckpoints(checkpoints);
+        converter.process();
+        checkpoints.finish();
+    }
+
+    /** Apply M to the messages in _input, a line at a time. */
+    private void processLines(Machine M) {
+        _input = new Scanner(_inputStream);
+        if (!_input.hasNextLine()) {
             throw error("First line must be setting");
         }
+        String missing = "First line must be setting";
+        boolean ready = false;
         while (_input.hasNextLine()) {
-            line = _input.nextLine();
-            if (line.isEmpty()) {
-                printMessageLine(line);
-            } else if (line.charAt(0) == '*') {
+            String line = _input.nextLine();
+            if (_configs != null && line.startsWith(SWITCH)) {
+                M = _configs.get(line.substring(SWITCH.length()).trim());
+                setEngine(M);
+                missing = "Change of configuration must be followed by"
+                    + " setting";
+                ready = false;
+            } else if (!line.isEmpty() && line.charAt(0) == '*') {
                 setUp(M, line);
+                indexSettings(line);
+                ready = true;
+            } else if (!ready) {
+                throw error(missing);
+            } else if (line.isEmpty()) {
+                printMessageLine(line);
             } else {
-                printMessageLine(M.convert(line.toUpperCase()));
+                printMessageLine(M.convert(line));
             }
         }
     }
@@ -104,12 +365,12 @@ public final class Main {
     private Machine readConfig() {
         try {
             String cur = "";
-            if (_config.hasNext("[^-()\\s]-[^-()\\s]")) {
-                cur = _config.next("[^-()\\s]-[^-()\\s]");
+            if (_config.hasNext(RANGE)) {
+                cur = _config.next(RANGE);
                 _alphabet = new CharacterRange(cur.charAt(0),
                         cur.charAt(2));
-            } else if (_config.hasNext("[^a-z()\\-*]+")) {
-                cur = _config.next("[^a-z()\\-*]+");
+            } else if (_config.hasNext(CHARACTERS)) {
+                cur = _config.next(CHARACTERS);
                 _alphabet = new CharacterRange(cur);
             } else {
                 throw error("Bad config: missing or invalid alphabet");
@@ -161,26 +422,27 @@ public final class Main {
     private Rotor readRotor() {
         try {
             String name = "";
-            if (_config.hasNext("[^()]+")) {
-                name = _config.next("[^()]+");
+            if (_config.hasNext(NAME)) {
+                name = _config.next(NAME);
             } else {
                 throw error("Bad rotor name in config file");
             }
             checkGoToNextLine();
 
             String type = "";
-            if (_config.hasNext("(M[^a-z()\\-*\\s]+|N|R)")) {
-                type = _config.next("(M[^a-z()\\-*\\s]+|N|R)");
+            if (_config.hasNext(TYPE)) {
+                type = _config.next(TYPE);
             } else {
                 throw error("Bad rotor type in config file");
             }
             checkGoToNextLine();
 
             String cycles = "";
-            while (_config.hasNext("([(][^()]+\\)\\s*)+")) {
-                cycles = cycles + _config.next("([(][^()]+\\)\\s*)+");
+            while (_config.hasNext(CYCLES)) {
+                cycles = cycles + _config.next(CYCLES);
                 checkGoToNextLine();
             }
+            checkCycles(cycles, _alphabet);
             Permutation perm = new Permutation(cycles.trim(), _alphabet);
 
             Rotor rotor = null;
@@ -210,14 +472,17 @@ public final class Main {
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment, except
+     *  that the rotor settings may be followed by ring settings in the
+     *  same form.  Without them, every ring setting is the first
+     *  character of the alphabet. */
+    static void setUp(Machine M, String settings) {
         settings = settings.trim();
-        if (!settings.matches("\\*\\s(([^(]+\\s*)+([(][^)]+\\)\\s*)*)")) {
-            error("Bad settings line");
+        if (!SETTINGS.matcher(settings).matches()) {
+            throw error("Bad settings line");
         } else {
             settings = settings.substring(1).trim();
-            String[] settingsArray = settings.split("\\s+");
+            String[] settingsArray = WHITESPACE.split(settings);
 
             String[] rotors = new String[M.numRotors()];
             String rotorSettings = "";
@@ -228,7 +493,7 @@ public final class Main {
                 if (i >= settingsArray.length) {
                     throw error("Bad settings line: not enough arguments");
                 }
-                if (settingsArray[i].matches("([(][^()]+\\)\\s*)")) {
+                if (CYCLE.matcher(settingsArray[i]).matches()) {
                     throw error("Either too few rotors or no rotor settings");
                 }
                 rotors[i] = settingsArray[i];
@@ -237,28 +502,53 @@ public final class Main {
             M.insertRotors(rotors);
 
             if (i >= settingsArray.length
-                    || settingsArray[i].matches("([(][^()]+\\)\\s*)")) {
+                    || CYCLE.matcher(settingsArray[i]).matches()) {
                 throw error("No rotor settings given");
             }
             rotorSettings = settingsArray[i];
             i++;
 
+            String rings = null;
+            if (i < settingsArray.length
+                    && !CYCLE.matcher(settingsArray[i]).matches()) {
+                rings = settingsArray[i];
+                i++;
+            }
+
             for (; i < settingsArray.length; i++) {
-                if (!settingsArray[i].matches("([(][^()]+\\)\\s*)")) {
+                if (!CYCLE.matcher(settingsArray[i]).matches()) {
                     throw error("Bad rotor settings line: Invalid cycles");
                 }
                 cycles = cycles + settingsArray[i];
             }
 
             M.setRotors(rotorSettings);
+            if (rings == null) {
+                rings = String.valueOf(M.getAlphabet().toChar(0))
+                    .repeat(M.numRotors() - 1);
+            }
+            M.setRings(rings);
+            checkCycles(cycles, M.getAlphabet());
             M.setPlugboard(new Permutation(cycles, M.getAlphabet()));
         }
     }
 
+    /** Check that every character of the cycles CYCLES, other than
+     *  parentheses and whitespace, is in ALPHABET. */
+    private static void checkCycles(String cycles, Alphabet alphabet) {
+        for (int i = 0; i < cycles.length(); i++) {
+            char c = cycles.charAt(i);
+            if (c != '(' && c != ')' && !Character.isWhitespace(c)
+                && !alphabet.contains(c)) {
+                throw error("Bad cycle: character not in alphabet");
+            }
+        }
+    }
+
     /** Check if string array has duplicate elements.
      * @param s the String array
      */
-    private void hasDuplicates(String[] s) {
+    private static void hasDuplicates(String[] s) {
         for (int i = 0; i < s.length - 1; i++) {
             for (int j = i + 1; j < s.length; j++) {
                 if (s[i].equals(s[j])) {
@@ -268,29 +558,135 @@ public final class Main {
         }
     }
 
+    /** Record in _index, if there is one, that the settings line
+     *  SETTINGS has been applied. */
+    private void indexSettings(String settings) {
+        if (_index != null) {
+            _index.settings(settings);
+            _index.lineStart(_written, _lines);
+        }
+    }
+
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
+        StringBuilder line = new StringBuilder();
         int count = 0;
         for (int i = 0; i < msg.length(); i++) {
             char c = msg.charAt(i);
             if (count == 5) {
-                _output.append(' ');
+                line.append(' ');
                 count = 1;
             } else {
                 count = count + 1;
             }
-            _output.append(c);
+            line.append(c);
+        }
+        _output.println(line);
+        if (_index != null) {
+            line.append(System.lineSeparator());
+            _written += line.toString().getBytes().length;
+            _lines += 1;
+            _index.lineStart(_written, _lines);
         }
-        _output.println();
     }
 
+    /** What to do with message characters outside the alphabet. */
+    private Normalizer.Policy _policy = Normalizer.Policy.ERROR;
+
+    /** True iff lower case in messages is converted as upper case. */
+    private boolean _fold = true;
+
+    /** Name of the file to which to write a SeekIndex of the output, or
+     *  null if none is to be written. */
+    private String _indexName;
+
+    /** An alphabet given as a range of characters, such as A-Z. */
+    private static final Pattern RANGE =
+        Pattern.compile("[^-()\\s]-[^-()\\s]");
+
+    /** An alphabet given as its characters. */
+    private static final Pattern CHARACTERS =
+        Pattern.compile("[^a-z()\\-*]+");
+
+    /** A rotor name. */
+    private static final Pattern NAME = Pattern.compile("[^()]+");
+
+    /** A rotor type, with the notches of a moving rotor. */
+    private static final Pattern TYPE =
+        Pattern.compile("(M[^a-z()\\-*\\s]+|N|R)");
+
+    /** One or more cycles with nothing between them. */
+    private static final Pattern CYCLES =
+        Pattern.compile("([(][^()]+\\)\\s*)+");
+
+    /** A single cycle. */
+    private static final Pattern CYCLE =
+        Pattern.compile("([(][^()]+\\)\\s*)");
+
+    /** A settings line. */
+    private static final Pattern SETTINGS =
+        Pattern.compile("\\*\\s(([^(]+\\s*)+([(][^)]+\\)\\s*)*)");
+
+    /** The start of a line changing configuration. */
+    private static final String SWITCH = "@";
+
+    /** The separator of the fields of a settings line. */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /** Name of the MachineTables file compiled from the configuration
+     *  file, or null if the configuration file is to be read. */
+    private String _tablesName;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** The kind of ConversionEngine to use, or null to let the machine
+     *  choose. */
+    private ConversionEngine.Kind _engineKind;
+
+    /** True iff the choice of ConversionEngine is to be reported. */
+    private boolean _verbose;
+
+    /** The largest number of configurations kept at once when the input
+     *  may change configuration, or 0 if it may not. */
+    private int _cacheSize;
+
+    /** The configurations the input has used, when it may change
+     *  configuration, or null. */
+    private ConfigCache _configs;
+
+    /** Name of the file in which to save checkpoints, or null if none
+     *  are to be taken. */
+    private String _checkpointName;
+
+    /** True iff the run is to resume from its checkpoint. */
+    private boolean _resume;
+
+    /** Names of the input and output files, when taking checkpoints. */
+    private String _inputName, _outputName;
+
+    /** The stream underlying _output, when taking checkpoints. */
+    private FileOutputStream _outputFile;
+
+    /** The SeekIndex being written, or null. */
+    private SeekIndex _index;
+
+    /** Number of bytes of output written, when indexing. */
+    private long _written;
+
+    /** Number of output lines written, when indexing. */
+    private long _lines;
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
-    /** Source of input messages. */
+    /** Source of input messages, when they are read a line at a time. */
     private Scanner _input;
 
+    /** The stream from which _input reads. */
+    private InputStream _inputStream;
+
     /** Source of machine configuration. */
     private Scanner _config;
 
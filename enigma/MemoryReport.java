@@ -0,0 +1,36 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Reports how much memory the alphabet and each rotor of a machine
+ *  configuration take, and in which width of table they are stored.
+ *  @author Nicholas Moy
+ */
+public final class MemoryReport {
+
+    /** Print the report for the configuration file ARGS[0]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("Usage: java enigma.MemoryReport CONFIG");
+            }
+            Machine machine = Main.configure(args[0]);
+            Alphabet alphabet = machine.getAlphabet();
+            System.out.printf("alphabet: %d characters, %d bytes%n",
+                              alphabet.size(), alphabet.bytes());
+            long total = 0;
+            for (Rotor rotor : machine.getAllRotors()) {
+                Permutation perm = rotor.permutation();
+                System.out.printf("%s: %d-byte entries, %d bytes%n",
+                                  rotor.name(), perm.width(), perm.bytes());
+                total += perm.bytes();
+            }
+            System.out.printf("rotors: %d, %d bytes%n",
+                              machine.getAllRotors().size(), total);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+}
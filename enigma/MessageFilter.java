@@ -0,0 +1,63 @@
+package enigma;
+
+/** Converts runs of message text through a machine for EnigmaReader and
+ *  EnigmaWriter, keeping what must carry over from one run to the next.
+ *  Line terminators are copied unconverted, and when output is grouped a
+ *  space is inserted after every five characters of a line, as Main
+ *  prints messages.
+ *  @author Nicholas Moy
+ */
+class MessageFilter {
+
+    /** A filter converting with MACHINE, grouping its output in fives iff
+     *  GROUPED. */
+    MessageFilter(Machine machine, boolean grouped) {
+        _machine = machine;
+        _grouped = grouped;
+    }
+
+    /** Returns the most characters that filter() can write for LEN
+     *  characters of input. */
+    static int capacity(int len) {
+        return 2 * len;
+    }
+
+    /** Convert IN[FROM .. TO - 1], which is overwritten in the process,
+     *  writing the results to OUT[AT ..], which must have room for
+     *  capacity(TO - FROM) characters.  Returns the index in OUT just
+     *  past the last character written. */
+    int filter(char[] in, int from, int to, char[] out, int at) {
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || in[i] == '\n' || in[i] == '\r') {
+                int end = _machine.convert(in, start, i);
+                for (int k = start; k < end; k++) {
+                    if (_grouped && _group == GROUP) {
+                        out[at++] = ' ';
+                        _group = 0;
+                    }
+                    out[at++] = in[k];
+                    _group += 1;
+                }
+                if (i < to) {
+                    out[at++] = in[i];
+                    _group = 0;
+                }
+                start = i + 1;
+            }
+        }
+        return at;
+    }
+
+    /** Number of characters in an output group. */
+    private static final int GROUP = 5;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** True iff output is grouped. */
+    private final boolean _grouped;
+
+    /** Number of characters written in the current group. */
+    private int _group;
+}
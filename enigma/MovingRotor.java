@@ -1,6 +1,6 @@
 package enigma;
 
-import java.util.HashSet;
+import java.util.BitSet;
 
 import static enigma.EnigmaException.*;
 
@@ -18,21 +18,36 @@ class MovingRotor extends Rotor {
         super(name, perm);
         _setting = 0;
 
-        _notches = new HashSet<>();
+        _notches = new BitSet(perm.size());
         for (int i = 0; i < notches.length(); i++) {
             char c = notches.charAt(i);
-            _notches.add(c);
+            if (perm.alphabet().contains(c)) {
+                _notches.set(perm.alphabet().toInt(c));
+            }
         }
     }
 
+    /** A rotor named NAME whose permutation in its default setting is
+     *  PERM, at its 0 setting, with notches at the settings in NOTCHES,
+     *  which it shares. */
+    private MovingRotor(String name, Permutation perm, BitSet notches) {
+        super(name, perm);
+        _notches = notches;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), wiring(), _notches);
+    }
+
     @Override
     public boolean rotates() {
         return true;
     }
 
     @Override
-    public boolean atNotch() {
-        return (_notches.contains(alphabet().toChar(_setting)));
+    boolean hasNotchAt(int posn) {
+        return _notches.get(posn);
     }
 
     @Override
@@ -40,6 +55,6 @@ class MovingRotor extends Rotor {
         _setting = permutation().wrap(_setting + 1);
     }
 
-    /** HashSet of all notches of this rotor. */
-    private HashSet<Character> _notches;
+    /** The settings at which this rotor is at a notch. */
+    private BitSet _notches;
 }
@@ -0,0 +1,125 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probabilities of the n-grams of an alphabet, used to judge how
+ *  much a candidate decryption looks like the language of the traffic.
+ *  Each n-gram is stored at the index formed by reading its characters'
+ *  alphabet indices as the digits of a base-size() number, so a score is
+ *  a single array access.
+ *  @author Nicholas Moy
+ */
+class NgramTable {
+
+    /** A table for N-grams of ALPHA in which every n-gram has the
+     *  log-probability FLOOR. */
+    NgramTable(Alphabet alpha, int n, float floor) {
+        double entries = Math.pow(alpha.size(), n);
+        if (n < 1 || entries > MAX_ENTRIES) {
+            throw error("Bad n-gram length: %d", n);
+        }
+        _alphabet = alpha;
+        _n = n;
+        _scores = new float[(int) entries];
+        _prefixes = _scores.length / alpha.size();
+        Arrays.fill(_scores, floor);
+    }
+
+    /** Returns the table read from the file named NAME, which holds
+     *  whitespace-separated n-grams of ALPHA, each followed by its count
+     *  in some corpus.  N-grams absent from the file are taken to have
+     *  occurred a hundredth of a time. */
+    static NgramTable read(String name, Alphabet alpha) {
+        ArrayList<String> grams = new ArrayList<>();
+        ArrayList<Long> counts = new ArrayList<>();
+        long total = 0;
+        try (Scanner input = new Scanner(new File(name))) {
+            while (input.hasNext()) {
+                grams.add(input.next().toUpperCase());
+                if (!input.hasNextLong()) {
+                    throw error("Bad n-gram count in %s", name);
+                }
+                counts.add(input.nextLong());
+                total += counts.get(counts.size() - 1);
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        if (grams.isEmpty() || total <= 0) {
+            throw error("No n-grams in %s", name);
+        }
+        NgramTable ans = new NgramTable(alpha, grams.get(0).length(),
+            (float) Math.log10(ABSENT / total));
+        for (int i = 0; i < grams.size(); i++) {
+            if (grams.get(i).length() != ans._n) {
+                throw error("Mixed n-gram lengths in %s", name);
+            }
+            ans._scores[ans.index(grams.get(i))] =
+                (float) Math.log10((double) counts.get(i) / total);
+        }
+        return ans;
+    }
+
+    /** Returns the length of my n-grams. */
+    int length() {
+        return _n;
+    }
+
+    /** Returns the number of n-grams I hold, size() ** length(). */
+    int entries() {
+        return _scores.length;
+    }
+
+    /** Returns my scores, indexed as described above. */
+    float[] scores() {
+        return _scores;
+    }
+
+    /** Returns the index of the n-gram GRAM. */
+    int index(String gram) {
+        int ans = 0;
+        for (int i = 0; i < gram.length(); i++) {
+            ans = ans * _alphabet.size() + _alphabet.toInt(gram.charAt(i));
+        }
+        return ans;
+    }
+
+    /** Returns the total log-probability of the n-grams of TEXT[0 ..
+     *  LEN - 1], a sequence of alphabet indices. */
+    double score(int[] text, int len) {
+        int size = _alphabet.size();
+        int idx = 0;
+        double ans = 0;
+        for (int i = 0; i < len; i++) {
+            idx = (idx % _prefixes) * size + text[i];
+            if (i >= _n - 1) {
+                ans += _scores[idx];
+            }
+        }
+        return ans;
+    }
+
+    /** Largest table allowed. */
+    private static final double MAX_ENTRIES = 1 << 26;
+
+    /** Count assumed for n-grams absent from a corpus. */
+    private static final double ABSENT = 0.01;
+
+    /** Alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Number of (n-1)-grams. */
+    private final int _prefixes;
+
+    /** Log-probability of each n-gram, by index. */
+    private final float[] _scores;
+}
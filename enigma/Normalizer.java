@@ -0,0 +1,126 @@
+package enigma;
+
+/** Classifies the characters of input messages before they reach a
+ *  machine.  Each character either stands for a character of the
+ *  alphabet, possibly after folding to upper case, or is outside the
+ *  alphabet; spaces are always dropped, and what happens to other
+ *  characters outside the alphabet is decided by a policy.  The
+ *  classification of the characters up to those of the alphabet is
+ *  computed once from the alphabet, so classifying a character is
+ *  usually a single table lookup.
+ *  @author Nicholas Moy
+ */
+class Normalizer {
+
+    /** What to do with a character outside the alphabet. */
+    enum Policy {
+        /** Leave it out of the output. */
+        DROP,
+        /** Copy it to the output unconverted. */
+        PASS,
+        /** Report an error. */
+        ERROR
+    }
+
+    /** Result of classify() for characters to be dropped. */
+    static final int DROP = -1;
+
+    /** Result of classify() for characters to be passed through. */
+    static final int PASS = -2;
+
+    /** Result of classify() for characters that are errors. */
+    static final int ERROR = -3;
+
+    /** A normalizer for ALPHA that treats characters outside it according
+     *  to OTHER, first folding lower case to upper case iff FOLD. */
+    Normalizer(Alphabet alpha, Policy other, boolean fold) {
+        _alphabet = alpha;
+        _policy = other;
+        _fold = fold;
+        _other = code(other);
+        int limit = ' ' + 1;
+        for (int i = 0; i < alpha.size(); i++) {
+            char ch = alpha.toChar(i);
+            limit = Math.max(limit, ch + 1);
+            if (fold) {
+                limit = Math.max(limit, Character.toLowerCase(ch) + 1);
+            }
+        }
+        _table = IndexTable.of(limit, alpha.size() - ERROR);
+        for (int c = 0; c < limit; c++) {
+            _table.set(c, lookup((char) c) - ERROR);
+        }
+    }
+
+    /** A normalizer for ALPHA behaving as Machine always has: spaces are
+     *  dropped, lower case is folded and anything else outside ALPHA is
+     *  an error. */
+    Normalizer(Alphabet alpha) {
+        this(alpha, Policy.ERROR, true);
+    }
+
+    /** Returns the index in my alphabet that C stands for, or DROP, PASS
+     *  or ERROR. */
+    int classify(char c) {
+        return c < _table.length() ? _table.get(c) + ERROR : lookup(c);
+    }
+
+    /** Returns classify(C), computed from my alphabet. */
+    private int lookup(char c) {
+        char ch = _fold ? Character.toUpperCase(c) : c;
+        if (c == ' ') {
+            return DROP;
+        } else if (_alphabet.contains(ch)) {
+            return _alphabet.toInt(ch);
+        } else {
+            return _other;
+        }
+    }
+
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Returns my policy for characters outside the alphabet. */
+    Policy policy() {
+        return _policy;
+    }
+
+    /** Returns true iff I fold lower case to upper case. */
+    boolean folds() {
+        return _fold;
+    }
+
+    /** Returns the result of classify() for characters handled by
+     *  POLICY. */
+    private static int code(Policy policy) {
+        switch (policy) {
+        case DROP:
+            return DROP;
+        case PASS:
+            return PASS;
+        default:
+            return ERROR;
+        }
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** The policy for characters outside the alphabet. */
+    private final Policy _policy;
+
+    /** True iff lower case is folded. */
+    private final boolean _fold;
+
+    /** The classification of characters outside the alphabet. */
+    private final int _other;
+
+    /** The classification of each character, less ERROR, up to the last
+     *  character of the alphabet and its lower case.  Beyond that,
+     *  characters only rarely stand for characters of the alphabet, and
+     *  are classified as needed, which spares building a table of every
+     *  character. */
+    private final IndexTable _table;
+}
@@ -2,8 +2,6 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-import java.util.HashMap;
-
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
  *  @author Nicholas Moy
@@ -17,17 +15,16 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _foward = new HashMap<>();
-        _backward = new HashMap<>();
+        _foward = IndexTable.of(alphabet.size(), alphabet.size());
+        _backward = IndexTable.of(alphabet.size(), alphabet.size());
 
         cycles = cycles.replaceAll("[\\(\\)]", " ");
         cycles = cycles.trim();
         String[] cycleArr = cycles.split("\\s+");
 
         for (int i = 0; i < _alphabet.size(); i++) {
-            char c = _alphabet.toChar(i);
-            _foward.put(c, c);
-            _backward.put(c, c);
+            _foward.set(i, i);
+            _backward.set(i, i);
         }
 
         for (String s : cycleArr) {
@@ -36,24 +33,38 @@ class Permutation {
 
     }
 
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to FORWARD[I], which must be a permutation of those indices. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _foward = IndexTable.of(alphabet.size(), alphabet.size());
+        _backward = IndexTable.of(alphabet.size(), alphabet.size());
+        if (forward.length != alphabet.size()) {
+            throw error("Bad permutation table");
+        }
+        boolean[] seen = new boolean[forward.length];
+        for (int i = 0; i < forward.length; i++) {
+            int c = forward[i];
+            if (c < 0 || c >= forward.length || seen[c]) {
+                throw error("Bad permutation table");
+            }
+            seen[c] = true;
+            _foward.set(i, c);
+            _backward.set(c, i);
+        }
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  Links to or from characters outside my alphabet are
+     *  ignored. */
     private void addCycle(String cycle) {
-        if (cycle.length() == 0) {
-            return;
-        } else if (cycle.length() == 1) {
-            char c = cycle.charAt(0);
-            _foward.put(c, c);
-            _backward.put(c, c);
-        } else {
-            for (int i = 0; i < cycle.length() - 1; i++) {
-                char c1 = cycle.charAt(i);
-                char c2 = cycle.charAt(i + 1);
-                _foward.put(c1, c2);
-                _backward.put(c2, c1);
+        for (int i = 0; i < cycle.length(); i++) {
+            char c1 = cycle.charAt(i);
+            char c2 = cycle.charAt((i + 1) % cycle.length());
+            if (_alphabet.contains(c1) && _alphabet.contains(c2)) {
+                _foward.set(_alphabet.toInt(c1), _alphabet.toInt(c2));
+                _backward.set(_alphabet.toInt(c2), _alphabet.toInt(c1));
             }
-            _foward.put(cycle.charAt(cycle.length() - 1), cycle.charAt(0));
-            _backward.put(cycle.charAt(0), cycle.charAt(cycle.length() - 1));
         }
     }
 
@@ -74,26 +85,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char key = _alphabet.toChar(wrap(p));
-        return _alphabet.toInt(permute(key));
+        return _foward.get(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char key = _alphabet.toChar(wrap(c));
-        return _alphabet.toInt(invert(key));
+        return _backward.get(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return _foward.get(p);
+        return _alphabet.toChar(_foward.get(_alphabet.toInt(p)));
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return _backward.get(c);
+        return _alphabet.toChar(_backward.get(_alphabet.toInt(c)));
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -101,6 +110,16 @@ class Permutation {
         return _alphabet;
     }
 
+    /** Return the number of bytes taken by my tables. */
+    long bytes() {
+        return _foward.bytes() + _backward.bytes();
+    }
+
+    /** Return the number of bytes in each entry of my tables. */
+    int width() {
+        return _foward.width();
+    }
+
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
@@ -116,9 +135,9 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Hashmap of all cycles of this permutation going foward. */
-    private HashMap<Character, Character> _foward;
+    /** The index each index maps to going foward. */
+    private IndexTable _foward;
 
-    /** Hashmap of all cycles of this permutation going backward. */
-    private HashMap<Character, Character> _backward;
+    /** The index each index maps to going backward. */
+    private IndexTable _backward;
 }
@@ -104,5 +104,23 @@ public class PermutationTest {
         assertTrue(perm.derangement());
     }
 
+    /** Tests that tables are stored in entries just wide enough for the
+     *  alphabet, and still permute correctly. */
+    @Test
+    public void storageTest() {
+        perm = new Permutation("(ABC)", UPPER);
+        assertEquals(1, perm.width());
+        assertEquals(2 * 26, perm.bytes());
+
+        Alphabet wide = new CharacterRange('\u0100', '\u7fff');
+        perm = new Permutation("(\u0100\u7fff\u1234)", wide);
+        assertEquals(2, perm.width());
+        assertEquals('\u7fff', perm.permute('\u0100'));
+        assertEquals('\u0100', perm.permute('\u1234'));
+        assertEquals(0x7fff - 0x100, perm.invert(0x1234 - 0x100));
+        assertEquals(0x7fff - 0x100, wide.toInt('\u7fff'));
+        assertFalse(wide.contains('A'));
+    }
+
 
 }
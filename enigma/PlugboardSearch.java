@@ -0,0 +1,191 @@
+package enigma;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Recovery of the plugboard once the rotor order and settings of a
+ *  message are known, by hill-climbing from many random starting
+ *  plugboards in parallel.  Each climb repeatedly tries connecting,
+ *  disconnecting and exchanging pairs of plugs, keeping any change that
+ *  raises the n-gram score of the decryption.
+ *  @author Nicholas Moy
+ */
+public final class PlugboardSearch {
+
+    /** Search for the plugboard of the ciphertext in the file ARGS[1],
+     *  given the settings line ARGS[2] for the configuration file ARGS[0]
+     *  and the n-gram counts in the file ARGS[3], using ARGS[4] (default
+     *  100) random restarts.  Prints the settings line completed by the
+     *  best plugboard found, preceded by its score. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("Only 4 or 5 command-line arguments allowed");
+            }
+            Machine machine = Main.configure(args[0]);
+            Alphabet alpha = machine.getAlphabet();
+            int[] cipher = RotorSearch.readCiphertext(args[1], alpha);
+            Main.setUp(machine, args[2]);
+            NgramTable table = NgramTable.read(args[3], alpha);
+            int restarts = DEFAULT_RESTARTS;
+            if (args.length > 4) {
+                try {
+                    restarts = Integer.parseInt(args[4]);
+                } catch (NumberFormatException excp) {
+                    restarts = 0;
+                }
+                if (restarts <= 0) {
+                    throw error("Bad number of restarts: %s", args[4]);
+                }
+            }
+            PlugboardSearch search =
+                new PlugboardSearch(machine, cipher, table);
+            int[] best = search.search(restarts);
+            System.out.printf("%.2f %s%s%n", search.score(best),
+                              args[2].replaceAll("\\s*\\(.*$", ""),
+                              cycles(best, alpha));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search for the plugboard of CIPHER (as alphabet indices), which
+     *  was encrypted by MACHINE at its current rotors and settings, judged
+     *  by the n-grams in TABLE.  MACHINE's plugboard is the starting point
+     *  of the first climb. */
+    PlugboardSearch(Machine machine, int[] cipher, NgramTable table) {
+        TableMachine scrambler = TableMachine.of(machine);
+        _start = Wiring.table(machine.getPlugboard());
+        _size = scrambler.size();
+        for (int i = 0; i < _size; i++) {
+            if (_start[_start[i]] != i) {
+                throw error("Plugboard must consist of pairs");
+            }
+        }
+        int[] identity = new int[_size];
+        for (int i = 0; i < _size; i++) {
+            identity[i] = i;
+        }
+        scrambler.setPlugboard(identity);
+        _cipher = cipher;
+        _steps = new int[cipher.length * _size];
+        for (int i = 0; i < cipher.length; i++) {
+            scrambler.advance();
+            for (int x = 0; x < _size; x++) {
+                _steps[i * _size + x] = scrambler.map(x);
+            }
+        }
+        _table = table;
+    }
+
+    /** Returns the best plugboard found by RESTARTS climbs, as a table
+     *  mapping each character index to its partner. */
+    int[] search(int restarts) {
+        return IntStream.range(0, restarts).parallel()
+            .mapToObj(this::climb)
+            .reduce((a, b) -> score(a) >= score(b) ? a : b)
+            .get();
+    }
+
+    /** Returns the n-gram score of the decryption of my ciphertext with
+     *  plugboard PLUGS. */
+    double score(int[] plugs) {
+        return score(plugs, new int[_cipher.length]);
+    }
+
+    /** Returns the result of climb number RUN, which starts from the
+     *  initial plugboard if RUN is 0 and from a random one otherwise. */
+    private int[] climb(int run) {
+        int[] plugs = _start.clone();
+        if (run > 0) {
+            SplittableRandom random = new SplittableRandom(run);
+            for (int i = random.nextInt(_size / 2 + 1); i > 0; i--) {
+                exchange(plugs, random.nextInt(_size), random.nextInt(_size));
+            }
+        }
+        int[] text = new int[_cipher.length];
+        double best = score(plugs, text);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a++) {
+                for (int b = a + 1; b < _size; b++) {
+                    int pa = plugs[a], pb = plugs[b];
+                    exchange(plugs, a, b);
+                    double s = score(plugs, text);
+                    if (s > best) {
+                        best = s;
+                        improved = true;
+                    } else {
+                        plugs[a] = pa;
+                        plugs[pa] = a;
+                        plugs[b] = pb;
+                        plugs[pb] = b;
+                    }
+                }
+            }
+        }
+        return plugs;
+    }
+
+    /** Modify PLUGS by disconnecting A and B if they are partners, and
+     *  otherwise by connecting them to each other, releasing their
+     *  former partners. */
+    private static void exchange(int[] plugs, int a, int b) {
+        int pa = plugs[a], pb = plugs[b];
+        plugs[pa] = pa;
+        plugs[pb] = pb;
+        if (pa != b) {
+            plugs[a] = b;
+            plugs[b] = a;
+        }
+    }
+
+    /** Returns the n-gram score of the decryption of my ciphertext with
+     *  plugboard PLUGS, which is placed in TEXT. */
+    private double score(int[] plugs, int[] text) {
+        int[] steps = _steps;
+        int size = _size;
+        for (int i = 0, base = 0; i < text.length; i++, base += size) {
+            text[i] = plugs[steps[base + plugs[_cipher[i]]]];
+        }
+        return _table.score(text, text.length);
+    }
+
+    /** Returns the pairs in PLUGS as plugboard cycles of ALPHA, each
+     *  preceded by a blank.  Characters that are their own partners, or
+     *  whose partner is negative (unknown), are omitted. */
+    static String cycles(int[] plugs, Alphabet alpha) {
+        StringBuilder ans = new StringBuilder();
+        for (int a = 0; a < plugs.length; a++) {
+            if (plugs[a] > a) {
+                ans.append(" (").append(alpha.toChar(a))
+                    .append(alpha.toChar(plugs[a])).append(')');
+            }
+        }
+        return ans.toString();
+    }
+
+    /** Default number of climbs. */
+    private static final int DEFAULT_RESTARTS = 100;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The scrambler (the machine without plugboard) at each step of the
+     *  message: entry I * size + X is the image of X at step I. */
+    private final int[] _steps;
+
+    /** Starting plugboard of the first climb. */
+    private final int[] _start;
+
+    /** Scores of candidate decryptions. */
+    private final NgramTable _table;
+}
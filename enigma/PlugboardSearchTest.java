@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.TreeMap;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for NgramTable and PlugboardSearch.
+ *  @author Nicholas Moy
+ */
+public class PlugboardSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Text from which trigram counts are taken. */
+    private static final String CORPUS =
+        "THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG AND THEN THE DOG "
+        + "SLEEPS WHILE THE FOX RUNS OFF INTO THE FOREST WHERE THE OTHER "
+        + "FOXES ARE WAITING FOR THEIR DINNER AND THE NIGHT IS DARK AND "
+        + "COLD BUT THE FOXES ARE WARM IN THEIR DEN UNDER THE OLD TREE";
+
+    /** Returns a file of trigram counts of CORPUS. */
+    private String trigrams() throws IOException {
+        String text = CORPUS.replaceAll(" ", "");
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            counts.merge(text.substring(i, i + 3), 1, Integer::sum);
+        }
+        File file = File.createTempFile("trigrams", ".txt");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(file)) {
+            for (String gram : counts.keySet()) {
+                out.println(gram + " " + counts.get(gram));
+            }
+        }
+        return file.getPath();
+    }
+
+    /* ***** TESTS ***** */
+
+    /** Tests that n-grams of the corpus outscore other n-grams. */
+    @Test
+    public void checkTable() throws IOException {
+        NgramTable table = NgramTable.read(trigrams(), UPPER);
+        assertEquals(3, table.length());
+        assertEquals(26 * 26 * 26, table.entries());
+        float[] scores = table.scores();
+        assertTrue(scores[table.index("THE")] > scores[table.index("FOX")]);
+        assertTrue(scores[table.index("FOX")] > scores[table.index("QQQ")]);
+        int[] the = {UPPER.toInt('T'), UPPER.toInt('H'), UPPER.toInt('E')};
+        assertEquals(scores[table.index("THE")], table.score(the, 3), 1e-6);
+    }
+
+    /** Tests that the plugboard of a message is recovered. */
+    @Test
+    public void checkSearch() throws IOException {
+        String plain = CORPUS.replaceAll(" ", "");
+        Machine m = navalMachine(4, 3, "B", "I", "II", "III");
+        Main.setUp(m, "* B I II III MCK (FO) (TX) (HW)");
+        String cipher = m.convert(plain);
+        int[] indices = new int[cipher.length()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = UPPER.toInt(cipher.charAt(i));
+        }
+        m = navalMachine(4, 3, "B", "I", "II", "III");
+        Main.setUp(m, "* B I II III MCK");
+        PlugboardSearch search =
+            new PlugboardSearch(m, indices,
+                                NgramTable.read(trigrams(), UPPER));
+        int[] plugs = search.search(8);
+        assertEquals(" (FO) (HW) (TX)", PlugboardSearch.cycles(plugs, UPPER));
+    }
+}
@@ -26,4 +26,8 @@ class Reflector extends FixedRotor {
         }
     }
 
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), wiring());
+    }
 }
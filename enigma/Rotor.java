@@ -10,6 +10,7 @@ class Rotor {
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
         _name = name;
+        _wiring = perm;
         _permutation = perm;
         _setting = 0;
     }
@@ -24,11 +25,49 @@ class Rotor {
         return _permutation.alphabet();
     }
 
-    /** Return my permutation. */
+    /** Return my permutation, at my current ring setting. */
     Permutation permutation() {
         return _permutation;
     }
 
+    /** Return my permutation at ring setting 0. */
+    Permutation wiring() {
+        return _wiring;
+    }
+
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING.  The ring carries my alphabet, and with it my
+     *  notches, round my wiring, so that at setting S I permute as my
+     *  wiring would at setting S - RING, but reach my notches at the
+     *  same settings as before.  The shifted permutation is computed here,
+     *  once, so that converting and advancing cost the same whatever the
+     *  ring setting. */
+    void setRing(int ring) {
+        ring = _wiring.wrap(ring);
+        if (ring == _ring) {
+            return;
+        }
+        _ring = ring;
+        if (ring == 0) {
+            _permutation = _wiring;
+        } else {
+            int[] forward = new int[size()];
+            for (int i = 0; i < forward.length; i++) {
+                forward[i] = _wiring.wrap(_wiring.permute(i - ring) + ring);
+            }
+            _permutation = new Permutation(forward, alphabet());
+        }
+    }
+
+    /** Set ring() to character CRING. */
+    void setRing(char cring) {
+        setRing(alphabet().toInt(cring));
+    }
+
     /** Return the size of my alphabet. */
     int size() {
         return _permutation.size();
@@ -59,6 +98,12 @@ class Rotor {
         set(alphabet().toInt(cposn));
     }
 
+    /** Return a new rotor like me, sharing my wiring, at its 0 setting
+     *  and ring setting. */
+    Rotor copy() {
+        return new Rotor(_name, _wiring);
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
@@ -78,6 +123,11 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return hasNotchAt(_setting);
+    }
+
+    /** Returns true iff I would be at a notch in setting POSN. */
+    boolean hasNotchAt(int posn) {
         return false;
     }
 
@@ -93,9 +143,17 @@ class Rotor {
     /** My name. */
     private final String _name;
 
-    /** The permutation implemented by this rotor in its 0 position. */
+    /** The permutation implemented by this rotor in its 0 position, at
+     *  ring setting 0. */
+    private final Permutation _wiring;
+
+    /** The permutation implemented by this rotor in its 0 position, at
+     *  its ring setting. */
     private Permutation _permutation;
 
+    /** The ring setting of this rotor. */
+    private int _ring;
+
     /** The current setting of this rotor. */
     protected int _setting;
 }
@@ -0,0 +1,340 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Ciphertext-only search for the reflector, rotor order and rotor
+ *  settings of a message, scoring each candidate by the index of
+ *  coincidence of its decryption.  The plugboard is taken to be the
+ *  identity.
+ *  @author Nicholas Moy
+ */
+public final class RotorSearch {
+
+    /** Search for the settings of the ciphertext in the file ARGS[1],
+     *  using the rotors of the configuration file ARGS[0], and print
+     *  the best ARGS[2] (default 10) candidates, best first, as settings
+     *  lines preceded by their scores. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Only 2 or 3 command-line arguments allowed");
+            }
+            Machine machine = Main.configure(args[0]);
+            int k = args.length > 2 ? parseCount(args[2]) : DEFAULT_COUNT;
+            int[] cipher = readCiphertext(args[1], machine.getAlphabet());
+            for (Candidate c : new RotorSearch(machine, k).search(cipher)) {
+                System.out.println(c);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search over the rotor catalog of MACHINE that reports the best
+     *  K candidates. */
+    RotorSearch(Machine machine, int k) {
+        _alphabet = machine.getAlphabet();
+        _count = k;
+        _orders = orders(machine);
+        if (_orders.isEmpty()) {
+            throw error("No rotor orders fit this machine");
+        }
+    }
+
+    /** Returns the best candidates for CIPHER (a sequence of alphabet
+     *  indices), best first. */
+    List<Candidate> search(int[] cipher) {
+        _cipher = cipher;
+        _best = new Best(_count);
+        int units = _orders.size() * (_orders.get(0).length > 1
+                                      ? _alphabet.size() : 1);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Task(0, units));
+        } finally {
+            pool.shutdown();
+        }
+        return _best.sorted();
+    }
+
+    /** Returns all the reflector and rotor orders that MACHINE accepts,
+     *  with non-moving rotors to the left of moving ones. */
+    static List<Wiring[]> orders(Machine machine) {
+        ArrayList<Wiring> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor r : machine.getAllRotors()) {
+            if (r.reflecting()) {
+                reflectors.add(new Wiring(r));
+            } else if (r.rotates()) {
+                moving.add(new Wiring(r));
+            } else {
+                fixed.add(new Wiring(r));
+            }
+        }
+        List<Wiring[]> ans = new ArrayList<>();
+        int numFixed = machine.numRotors() - 1 - machine.numPawls();
+        for (Wiring refl : reflectors) {
+            Wiring[] order = new Wiring[machine.numRotors()];
+            order[0] = refl;
+            arrange(order, 1, numFixed, fixed, moving, ans);
+        }
+        return ans;
+    }
+
+    /** Fill ORDER[K ..] in all possible ways with distinct rotors, taking
+     *  slots before NUMFIXED + 1 from FIXED and the rest from MOVING,
+     *  and add a copy of each result to RESULT. */
+    private static void arrange(Wiring[] order, int k, int numFixed,
+                                List<Wiring> fixed, List<Wiring> moving,
+                                List<Wiring[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<Wiring> pool = k <= numFixed ? fixed : moving;
+        for (Wiring w : pool) {
+            boolean used = false;
+            for (int i = 1; i < k; i++) {
+                used |= order[i] == w;
+            }
+            if (!used) {
+                order[k] = w;
+                arrange(order, k + 1, numFixed, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Returns the characters of the file named NAME, other than settings
+     *  lines and whitespace, as indices into ALPHA. */
+    static int[] readCiphertext(String name, Alphabet alpha) {
+        StringBuilder text = new StringBuilder();
+        try (Scanner input = new Scanner(new File(name))) {
+            while (input.hasNextLine()) {
+                String line = input.nextLine();
+                if (!line.startsWith("*")) {
+                    text.append(line.replaceAll("\\s", "").toUpperCase());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        int[] ans = new int[text.length()];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = alpha.toInt(text.charAt(i));
+        }
+        return ans;
+    }
+
+    /** Returns the candidate count denoted by S. */
+    private static int parseCount(String s) {
+        try {
+            int k = Integer.parseInt(s);
+            if (k > 0) {
+                return k;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("Bad candidate count: %s", s);
+    }
+
+    /** Score every setting of the rotor order with index UNIT / S, where
+     *  S is the alphabet size, whose leftmost rotor is at setting
+     *  UNIT % S.  The settings are tried BATCH_SIZE at a time. */
+    private void searchUnit(int unit) {
+        int size = _alphabet.size();
+        Wiring[] order = _orders.get(unit / (_orders.get(0).length > 1
+                                             ? size : 1));
+        BatchMachine batch = new BatchMachine(order, BATCH_SIZE);
+        int[][] lanes = new int[BATCH_SIZE][order.length];
+        int[] posns = new int[order.length];
+        if (order.length > 1) {
+            posns[1] = unit % size;
+        }
+        boolean more = true;
+        while (more) {
+            int filled;
+            for (filled = 0; more && filled < BATCH_SIZE; filled++) {
+                System.arraycopy(posns, 0, lanes[filled], 0, posns.length);
+                batch.setPositions(filled, posns);
+                more = nextSettings(posns, size);
+            }
+            batch.setActive(filled);
+            double[] scores =
+                batch.indexOfCoincidence(_cipher, _best.floor());
+            for (int l = 0; l < filled; l++) {
+                if (scores[l] >= 0) {
+                    _best.offer(new Candidate(order, lanes[l], scores[l],
+                                              _alphabet));
+                }
+            }
+        }
+    }
+
+    /** Step POSNS[2 ..] to the next combination of settings of an
+     *  alphabet of SIZE characters, as an odometer would, leaving
+     *  POSNS[1] alone.  Returns false if there are no more. */
+    static boolean nextSettings(int[] posns, int size) {
+        int k = posns.length - 1;
+        while (k > 1 && posns[k] == size - 1) {
+            posns[k] = 0;
+            k -= 1;
+        }
+        if (k <= 1) {
+            return false;
+        }
+        posns[k] += 1;
+        return true;
+    }
+
+    /** Returns the settings line that puts the rotors ORDER at settings
+     *  POSNS[1 ..] of ALPHA, without a plugboard. */
+    static String settingsLine(Wiring[] order, int[] posns, Alphabet alpha) {
+        StringBuilder line = new StringBuilder("*");
+        for (Wiring w : order) {
+            line.append(' ').append(w.name());
+        }
+        line.append(' ');
+        for (int i = 1; i < posns.length; i++) {
+            line.append(alpha.toChar(posns[i]));
+        }
+        return line.toString();
+    }
+
+    /** A range of work units, split among the pool's workers. */
+    private class Task extends RecursiveAction {
+
+        /** Work units LO .. HI - 1. */
+        Task(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                searchUnit(_lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Task(_lo, mid), new Task(mid, _hi));
+            }
+        }
+
+        /** Bounds of my range of units. */
+        private final int _lo, _hi;
+    }
+
+    /** A scored setting of the machine. */
+    static class Candidate implements Comparable<Candidate> {
+
+        /** The rotors ORDER at settings POSNS, with SCORE, using ALPHA
+         *  to name the settings. */
+        Candidate(Wiring[] order, int[] posns, double score, Alphabet alpha) {
+            _settings = settingsLine(order, posns, alpha);
+            _score = score;
+        }
+
+        /** Returns my settings line. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Returns my score. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(_score, other._score);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.6f %s", _score, _settings);
+        }
+
+        /** My settings line. */
+        private final String _settings;
+
+        /** My score. */
+        private final double _score;
+    }
+
+    /** The best candidates seen so far by all workers. */
+    private static class Best {
+
+        /** A collection of at most K candidates. */
+        Best(int k) {
+            _k = k;
+            _heap = new PriorityQueue<>();
+        }
+
+        /** Keep C if it is among the best seen so far. */
+        synchronized void offer(Candidate c) {
+            if (_heap.size() < _k) {
+                _heap.add(c);
+            } else if (c.score() > _heap.peek().score()) {
+                _heap.poll();
+                _heap.add(c);
+            }
+            if (_heap.size() == _k) {
+                _floor = _heap.peek().score();
+            }
+        }
+
+        /** Returns the score a candidate must beat to be kept. */
+        double floor() {
+            return _floor;
+        }
+
+        /** Returns my candidates, best first. */
+        synchronized List<Candidate> sorted() {
+            List<Candidate> ans = new ArrayList<>(_heap);
+            ans.sort(Collections.reverseOrder());
+            return ans;
+        }
+
+        /** Maximum number of candidates kept. */
+        private final int _k;
+
+        /** Candidates kept, worst first. */
+        private final PriorityQueue<Candidate> _heap;
+
+        /** Score of the worst candidate kept, once there are _k. */
+        private volatile double _floor = 0;
+    }
+
+    /** Default number of candidates reported. */
+    private static final int DEFAULT_COUNT = 10;
+
+    /** Number of settings decrypted together. */
+    private static final int BATCH_SIZE = 256;
+
+    /** Alphabet of the machine searched. */
+    private final Alphabet _alphabet;
+
+    /** Number of candidates reported. */
+    private final int _count;
+
+    /** Reflector and rotor orders searched. */
+    private final List<Wiring[]> _orders;
+
+    /** Ciphertext being searched. */
+    private int[] _cipher;
+
+    /** Best candidates found so far. */
+    private Best _best;
+}
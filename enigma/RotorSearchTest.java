@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for TableMachine and RotorSearch.
+ *  @author Nicholas Moy
+ */
+public class RotorSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Tests that a TableMachine steps and converts as Machine does,
+     *  including the double step. */
+    @Test
+    public void checkTableMachineAgrees() {
+        Machine m = navalMachine(NAVAL_SETTINGS);
+        TableMachine t = new TableMachine(Wiring.of(m.getRotors()));
+        int[] posns = new int[5];
+        for (int i = 0; i < 5; i++) {
+            posns[i] = m.getRotors().get(i).setting();
+        }
+        t.setPositions(posns);
+        t.setPlugboard(Wiring.table(new Permutation("(YF) (ZH)", UPPER)));
+        for (int i = 0; i < 2000; i++) {
+            int c = (i * 7) % 26;
+            assertEquals(msg("table", "character %d", i),
+                         m.convert(c), t.convert(c));
+            for (int k = 1; k < 5; k++) {
+                assertEquals(m.getRotors().get(k).setting(), t.position(k));
+            }
+        }
+    }
+
+    /** Tests that every rotor order is enumerated once. */
+    @Test
+    public void checkOrders() {
+        List<Wiring[]> orders = RotorSearch.orders(smallMachine());
+        assertEquals(4, orders.size());
+        for (Wiring[] order : orders) {
+            assertTrue(order[0].reflecting());
+            assertNotEquals(order[1], order[2]);
+        }
+    }
+
+    /** Tests that the search recovers the settings of a message. */
+    @Test
+    public void checkSearch() {
+        Machine m = smallMachine();
+        m.insertRotors(new String[] {"R2", "Y", "X"});
+        m.setRotors("DB");
+        String plain = "AAAABAAAAAACAAAAAAAAABAAAAAAAAAAAAAAAAAAAAAA";
+        int[] cipher = new int[plain.length()];
+        for (int i = 0; i < cipher.length; i++) {
+            cipher[i] = m.convert(plain.charAt(i) - 'A');
+        }
+        List<RotorSearch.Candidate> best =
+            new RotorSearch(m, 3).search(cipher);
+        assertEquals(3, best.size());
+        assertEquals("* R2 Y X DB", best.get(0).settings());
+        assertTrue(best.get(0).score() >= best.get(1).score());
+    }
+}
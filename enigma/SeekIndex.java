@@ -0,0 +1,222 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** An index of the output of Main, written alongside it, from which any
+ *  part of the output can be decrypted without replaying everything
+ *  before it.  The index holds a checkpoint at the start of an output
+ *  line at least every INTERVAL bytes of output, and at the start of
+ *  the first output line after every settings line: its byte offset
+ *  and line number in the output, the settings line then in force, and
+ *  a snapshot of the machine's state.  The output says nothing of where the
+ *  settings changed, so decryption from one checkpoint may continue
+ *  only up to the next.
+ *
+ *  The file starts with MAGIC, the number of rotor slots and the
+ *  alphabet size.  Then come records, each starting with a tag byte:
+ *  SETTINGS followed by a settings line, which applies to the
+ *  checkpoints after it, or CHECKPOINT followed by the offset, the line
+ *  number and the snapshot of the machine's state (Machine.saveState).
+ *  @author Nicholas Moy
+ */
+class SeekIndex {
+
+    /** A checkpoint. */
+    static class Checkpoint {
+
+        /** A checkpoint at byte OFFSET and line LINE (numbered from 0) of
+         *  the output, where the settings line SETTINGS applies and the
+         *  machine's state is the snapshot STATE. */
+        Checkpoint(long offset, long line, String settings, long[] state) {
+            _offset = offset;
+            _line = line;
+            _settings = settings;
+            _state = state;
+        }
+
+        /** Returns my byte offset in the output. */
+        long offset() {
+            return _offset;
+        }
+
+        /** Returns my line number in the output, counting from 0. */
+        long line() {
+            return _line;
+        }
+
+        /** Returns the settings line in force at me. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Set MACHINE to the state it had at me. */
+        void restore(Machine machine) {
+            Main.setUp(machine, _settings);
+            machine.restoreState(_state);
+        }
+
+        /** My byte offset. */
+        private final long _offset;
+
+        /** My line number. */
+        private final long _line;
+
+        /** The settings line in force. */
+        private final String _settings;
+
+        /** The snapshot of the machine's state. */
+        private final long[] _state;
+    }
+
+    /** An index for MACHINE to be written to the file named NAME. */
+    SeekIndex(String name, Machine machine) {
+        _machine = machine;
+        _state = new long[machine.stateWords()];
+        try {
+            _out = new DataOutputStream(new BufferedOutputStream(
+                       new FileOutputStream(name)));
+            _out.writeInt(MAGIC);
+            _out.writeInt(machine.numRotors());
+            _out.writeInt(machine.getAlphabet().size());
+        } catch (IOException excp) {
+            throw error("could not write index %s", name);
+        }
+    }
+
+    /** Record that the settings line SETTINGS has just been applied. */
+    void settings(String settings) {
+        _settings = settings;
+        _changed = true;
+    }
+
+    /** Record that an output line numbered LINE begins at byte OFFSET of
+     *  the output, writing a checkpoint if one is due. */
+    void lineStart(long offset, long line) {
+        if (_settings == null || (!_changed && offset < _next)) {
+            return;
+        }
+        try {
+            if (_changed) {
+                _out.writeByte(SETTINGS);
+                _out.writeUTF(_settings);
+                _changed = false;
+            }
+            _out.writeByte(CHECKPOINT);
+            _out.writeLong(offset);
+            _out.writeLong(line);
+            _machine.saveState(_state);
+            for (long word : _state) {
+                _out.writeLong(word);
+            }
+        } catch (IOException excp) {
+            throw error("could not write index");
+        }
+        _next = offset + INTERVAL;
+    }
+
+    /** Finish writing the index. */
+    void close() {
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write index");
+        }
+    }
+
+    /** Returns the checkpoints in the index file NAME, which must have
+     *  been written for a machine with NUMROTORS slots and an alphabet
+     *  of SIZE characters. */
+    static List<Checkpoint> read(String name, int numRotors, int size) {
+        List<Checkpoint> ans = new ArrayList<>();
+        int words = Machine.stateWords(numRotors, size);
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(name)))) {
+            if (in.readInt() != MAGIC || in.readInt() != numRotors
+                || in.readInt() != size) {
+                throw error("Index does not match configuration");
+            }
+            String settings = null;
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readByte();
+                } catch (EOFException excp) {
+                    break;
+                }
+                if (tag == SETTINGS) {
+                    settings = in.readUTF();
+                    continue;
+                } else if (tag != CHECKPOINT || settings == null) {
+                    throw error("Bad index file");
+                }
+                long offset = in.readLong(), line = in.readLong();
+                long[] state = new long[words];
+                for (int w = 0; w < words; w++) {
+                    state[w] = in.readLong();
+                }
+                ans.add(new Checkpoint(offset, line, settings, state));
+            }
+        } catch (IOException excp) {
+            throw error("could not read index %s", name);
+        }
+        return ans;
+    }
+
+    /** Returns the index in CHECKPOINTS, which are in order of offset,
+     *  of the last whose offset is at most OFFSET, or -1 if there is
+     *  none. */
+    static int before(List<Checkpoint> checkpoints, long offset) {
+        int lo = 0, hi = checkpoints.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (checkpoints.get(mid).offset() <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /** Least number of output bytes between checkpoints. */
+    static final int INTERVAL = 1 << 16;
+
+    /** Identifies index files. */
+    private static final int MAGIC = 0x454e4958;
+
+    /** Tag of a settings record. */
+    private static final int SETTINGS = 'S';
+
+    /** Tag of a checkpoint record. */
+    private static final int CHECKPOINT = 'C';
+
+    /** The machine whose state is recorded. */
+    private final Machine _machine;
+
+    /** Scratch space for snapshots of the machine's state. */
+    private final long[] _state;
+
+    /** Destination of the index. */
+    private DataOutputStream _out;
+
+    /** The settings line in force, or null if there is none yet. */
+    private String _settings;
+
+    /** True iff the settings line has been applied since the last
+     *  checkpoint. */
+    private boolean _changed;
+
+    /** Offset from which the next checkpoint is due. */
+    private long _next;
+}
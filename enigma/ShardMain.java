@@ -0,0 +1,424 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Enigma simulator that spreads one large input file over several
+ *  worker processes, each an ordinary run of Main.  The input is split
+ *  into shards at line ends, and each shard after the first is given a
+ *  settings line of its own that puts the machine in the state a single
+ *  run would have reached there: the rotors and plugboard of the
+ *  settings line then in force, with the rotor settings reached.  The
+ *  shards and a manifest listing them in order are written to a work
+ *  directory, the workers are run at most a given number at a time, and
+ *  their outputs are concatenated in the manifest's order, which gives
+ *  exactly the output of a single run.
+ *  @author Nicholas Moy
+ */
+public final class ShardMain {
+
+    /** Convert a file as specified by ARGS, which are CONFIG INPUT
+     *  OUTPUT, naming the configuration, input and output files,
+     *  optionally preceded by options.  --workers N runs N worker
+     *  processes (by default, one per processor), --work DIR keeps the
+     *  shards in DIR (by default, a new temporary directory, removed at
+     *  the end), and --drop, --pass, --strict and --no-fold are as for
+     *  Main.  The input must be ASCII. */
+    public static void main(String... args) {
+        try {
+            new ShardMain(args).process();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A coordinator for the arguments ARGS (see main). */
+    ShardMain(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k++) {
+            switch (args[k]) {
+            case "--drop":
+                _policy = Normalizer.Policy.DROP;
+                _options.add(args[k]);
+                break;
+            case "--pass":
+                _policy = Normalizer.Policy.PASS;
+                _options.add(args[k]);
+                break;
+            case "--strict":
+                _policy = Normalizer.Policy.ERROR;
+                _options.add(args[k]);
+                break;
+            case "--no-fold":
+                _fold = false;
+                _options.add(args[k]);
+                break;
+            case "--workers":
+                k += 1;
+                try {
+                    _workers = Integer.parseInt(args[k]);
+                } catch (NumberFormatException
+                         | ArrayIndexOutOfBoundsException excp) {
+                    throw error("--workers needs a number");
+                }
+                if (_workers < 1) {
+                    throw error("Bad number of workers");
+                }
+                break;
+            case "--work":
+                if (k + 1 == args.length) {
+                    throw error("No work directory given");
+                }
+                k += 1;
+                _work = new File(args[k]);
+                break;
+            default:
+                throw error("Unknown option %s", args[k]);
+            }
+        }
+        args = Arrays.copyOfRange(args, k, args.length);
+        if (args.length != 3) {
+            throw error("Usage: java enigma.ShardMain [OPTIONS] CONFIG INPUT"
+                        + " OUTPUT");
+        }
+        _config = args[0];
+        _input = args[1];
+        _output = args[2];
+    }
+
+    /** A part of the input. */
+    static class Shard {
+
+        /** The input from byte FROM up to TO, to be preceded by the
+         *  settings line SETTINGS, or by nothing if it is null. */
+        Shard(long from, long to, String settings) {
+            _from = from;
+            _to = to;
+            _settings = settings;
+        }
+
+        /** Returns the offset of my first byte in the input. */
+        long from() {
+            return _from;
+        }
+
+        /** Returns the offset just past my last byte in the input. */
+        long to() {
+            return _to;
+        }
+
+        /** Returns the settings line that precedes me, or null. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Write my input, from the input file IN, to the file OUT. */
+        void write(File in, File out) throws IOException {
+            try (FileChannel from = new FileInputStream(in).getChannel();
+                 FileOutputStream to = new FileOutputStream(out)) {
+                if (_settings != null) {
+                    to.write((_settings + "\n").getBytes());
+                }
+                long at = _from;
+                while (at < _to) {
+                    at += from.transferTo(at, _to - at, to.getChannel());
+                }
+            }
+        }
+
+        /** Offsets of my first byte and of the byte after my last. */
+        private final long _from, _to;
+
+        /** The settings line that precedes me, or null. */
+        private final String _settings;
+    }
+
+    /** Split the input IN, of LENGTH bytes, into at most COUNT shards of
+     *  roughly equal size, to be converted with MACHINE after
+     *  classifying characters with NORM, and return them in order.  A
+     *  shard starts only at the start of a line after the first settings
+     *  line, and none starts after a settings line that is in error, so
+     *  that the worker whose shard holds it reports the error. */
+    static List<Shard> plan(Machine machine, Normalizer norm,
+                            InputStream in, long length, int count)
+        throws IOException {
+        boolean[] counts = new boolean[ASCII_LIMIT];
+        for (int c = 0; c < ASCII_LIMIT; c++) {
+            counts[c] = norm.classify((char) c) >= 0;
+        }
+        long target = Math.max(1, length / count);
+        List<Shard> ans = new ArrayList<>();
+        ByteArrayOutputStream settings = new ByteArrayOutputStream();
+        String current = null, startLine = null;
+        FlatMachine flat = null;
+        long start = 0, steps = 0, offset = 0;
+        int state = START;
+        boolean afterCR = false, cutting = true;
+        byte[] buf = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            for (int i = 0; i < n; i++, offset++) {
+                int c = buf[i] & 0xff;
+                boolean lineFeed = c == '\n' && afterCR;
+                afterCR = c == '\r';
+                if (lineFeed) {
+                    continue;
+                }
+                if (state == START && cutting && flat != null
+                    && offset >= start + target && ans.size() + 1 < count) {
+                    flat.skip(steps);
+                    steps = 0;
+                    ans.add(new Shard(start, offset, startLine));
+                    startLine = settingsLine(machine, current, flat);
+                    start = offset;
+                }
+                if (c == '\n' || c == '\r') {
+                    if (state == SETTINGS) {
+                        current = settings.toString();
+                        try {
+                            Main.setUp(machine, current);
+                            flat = FlatMachine.of(machine);
+                            steps = 0;
+                        } catch (EnigmaException excp) {
+                            cutting = false;
+                        }
+                    }
+                    state = START;
+                } else if (state == START && c == '*') {
+                    state = SETTINGS;
+                    settings.reset();
+                    settings.write(c);
+                } else if (state == SETTINGS) {
+                    settings.write(c);
+                } else {
+                    state = MESSAGE;
+                    if (c < ASCII_LIMIT && counts[c]) {
+                        steps += 1;
+                    }
+                }
+            }
+        }
+        ans.add(new Shard(start, offset, startLine));
+        return ans;
+    }
+
+    /** Returns the settings line giving the rotors and plugboard of the
+     *  settings line SETTINGS for MACHINE, with the rotor settings of
+     *  FLAT. */
+    static String settingsLine(Machine machine, String settings,
+                               FlatMachine flat) {
+        String[] fields = settings.trim().substring(1).trim().split("\\s+");
+        StringBuilder posns = new StringBuilder();
+        for (int k = 1; k < flat.numRotors(); k++) {
+            posns.append(machine.getAlphabet().toChar(flat.position(k)));
+        }
+        fields[machine.numRotors()] = posns.toString();
+        return "* " + String.join(" ", fields);
+    }
+
+    /** Convert my input, as described at main. */
+    private void process() {
+        Machine machine = Main.configure(_config);
+        if (!AsciiConverter.accepts(machine.getAlphabet())) {
+            throw error("Sharding needs an ASCII alphabet");
+        }
+        Normalizer norm =
+            new Normalizer(machine.getAlphabet(), _policy, _fold);
+        File input = new File(_input);
+        boolean temporary = _work == null;
+        try {
+            List<Shard> shards;
+            try (InputStream in =
+                     new BufferedInputStream(new FileInputStream(input))) {
+                shards = plan(machine, norm, in, input.length(), _workers);
+            }
+            if (temporary) {
+                _work = Files.createTempDirectory("enigma").toFile();
+            } else if (!_work.isDirectory() && !_work.mkdirs()) {
+                throw error("could not create %s", _work);
+            }
+            File manifest = new File(_work, "manifest");
+            try (PrintWriter out = new PrintWriter(manifest)) {
+                for (int k = 0; k < shards.size(); k++) {
+                    Shard shard = shards.get(k);
+                    shard.write(input, shardFile(k, "inp"));
+                    out.printf("%d\t%d\t%d\t%s\t%s\t%s%n", k, shard.from(),
+                               shard.to(), shardFile(k, "inp"),
+                               shardFile(k, "out"), shardFile(k, "err"));
+                }
+            }
+            List<String[]> entries = readManifest(manifest);
+            int failed = runWorkers(entries);
+            merge(entries, failed);
+            if (failed < entries.size()) {
+                String msg = new String(Files.readAllBytes(
+                    new File(entries.get(failed)[ERR]).toPath())).trim();
+                throw error("%s", msg.replaceFirst("^Error: ", ""));
+            }
+            if (temporary) {
+                for (File f : _work.listFiles()) {
+                    f.delete();
+                }
+                _work.delete();
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the file in my work directory for shard K with the
+     *  extension EXT. */
+    private File shardFile(int k, String ext) {
+        return new File(_work, String.format("shard%04d.%s", k, ext));
+    }
+
+    /** Returns the entries of the manifest MANIFEST, in order, each
+     *  split into its fields. */
+    private static List<String[]> readManifest(File manifest)
+        throws IOException {
+        List<String[]> ans = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(manifest))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                ans.add(line.split("\t"));
+            }
+        }
+        return ans;
+    }
+
+    /** Run a worker on each shard of ENTRIES, at most _workers at a time,
+     *  and return the number of the first whose worker failed, or the
+     *  number of shards if none did.  Workers are waited for in order,
+     *  so once one fails, only the output of those before it is wanted;
+     *  no more are started, and those still running are destroyed, as
+     *  they are if anything else goes wrong.  Either way, no worker is
+     *  left running on return. */
+    private int runWorkers(List<String[]> entries) throws IOException {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        Process[] workers = new Process[entries.size()];
+        int k = 0, done = 0;
+        try {
+            while (done < entries.size()) {
+                if (k < entries.size() && k - done < _workers) {
+                    String[] entry = entries.get(k);
+                    List<String> command = new ArrayList<>();
+                    command.addAll(Arrays.asList(java, "-cp", classPath,
+                                                 "enigma.Main"));
+                    command.addAll(_options);
+                    command.addAll(Arrays.asList(_config, entry[INP],
+                                                 entry[OUT]));
+                    workers[k] = new ProcessBuilder(command)
+                        .redirectError(new File(entry[ERR])).start();
+                    k += 1;
+                } else {
+                    try {
+                        if (workers[done].waitFor() != 0) {
+                            return done;
+                        }
+                    } catch (InterruptedException excp) {
+                        Thread.currentThread().interrupt();
+                        throw error("interrupted");
+                    }
+                    done += 1;
+                }
+            }
+            return entries.size();
+        } finally {
+            stop(workers, done, k);
+        }
+    }
+
+    /** Destroy the workers WORKERS[FROM .. TO - 1], which may still be
+     *  running, and wait for each to exit. */
+    private static void stop(Process[] workers, int from, int to) {
+        for (int k = from; k < to; k++) {
+            workers[k].destroy();
+        }
+        boolean interrupted = false;
+        for (int k = from; k < to; k++) {
+            boolean exited = false;
+            while (!exited) {
+                try {
+                    workers[k].waitFor();
+                    exited = true;
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Concatenate onto my output file the outputs of the shards of
+     *  ENTRIES up to and including shard LAST, if there is one. */
+    private void merge(List<String[]> entries, int last) throws IOException {
+        try (FileChannel out = new FileOutputStream(_output).getChannel()) {
+            for (int k = 0; k <= last && k < entries.size(); k++) {
+                File part = new File(entries.get(k)[OUT]);
+                if (!part.exists()) {
+                    continue;
+                }
+                try (FileChannel in = new FileInputStream(part).getChannel()) {
+                    long at = 0, size = in.size();
+                    while (at < size) {
+                        at += in.transferTo(at, size - at, out);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Fields of a manifest entry: the input, output and error files of
+     *  its worker. */
+    private static final int INP = 3, OUT = 4, ERR = 5;
+
+    /** Number of ASCII characters. */
+    private static final int ASCII_LIMIT = 128;
+
+    /** Size of the buffer through which the input is scanned. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** States: at the start of a line, in a settings line, and in a
+     *  message line. */
+    private static final int START = 0, SETTINGS = 1, MESSAGE = 2;
+
+    /** Options passed on to the workers. */
+    private final List<String> _options = new ArrayList<>();
+
+    /** What to do with message characters outside the alphabet. */
+    private Normalizer.Policy _policy = Normalizer.Policy.ERROR;
+
+    /** True iff lower case in messages is converted as upper case. */
+    private boolean _fold = true;
+
+    /** Number of workers. */
+    private int _workers = Runtime.getRuntime().availableProcessors();
+
+    /** Directory holding the shards, or null if a temporary one is to be
+     *  made. */
+    private File _work;
+
+    /** Names of the configuration, input and output files. */
+    private final String _config, _input, _output;
+}
@@ -0,0 +1,237 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Advances the rotor settings of a machine as Machine does, touching
+ *  only the rotors that move.  A slot other than the last moves exactly
+ *  when it is "due": its own rotor is at a notch and the rotor to its
+ *  left has a ratchet, or the rotor to its right is at a notch and its
+ *  own rotor has a ratchet.  Whether a slot is due changes only when its
+ *  rotor or its right neighbour's moves, so the due slots are kept in a
+ *  list and revised only around the slots that just moved, and the last
+ *  slot, which moves every time, keeps a count of the steps remaining
+ *  before it reaches its next notch.  Each step therefore costs time in
+ *  proportion to the number of rotors that move, which averages out to
+ *  a constant however many slots the machine has.
+ *  @author Nicholas Moy
+ */
+class Stepper {
+
+    /** A stepper for a machine whose slots hold the rotors described by
+     *  ROTORS and whose settings are POSNS[0 .. ROTORS.length - 1].  POSNS
+     *  is shared, not copied; reset() must be called whenever anything
+     *  else changes it. */
+    Stepper(Wiring[] rotors, int[] posns) {
+        this(rotors[0].size(), new boolean[rotors.length],
+             new long[rotors.length][(rotors[0].size() + 63) >>> 6], posns);
+        for (int k = 0; k < rotors.length; k++) {
+            _rotates[k] = rotors[k].rotates();
+            boolean[] notches = rotors[k].notches();
+            for (int p = 0; p < _size; p++) {
+                if (notches[p]) {
+                    _notches[k][p >>> 6] |= 1L << p;
+                }
+            }
+        }
+        reset();
+    }
+
+    /** A stepper for a machine whose slots hold ROTORS and whose
+     *  settings are POSNS[0 .. ROTORS.size() - 1], shared as for
+     *  Stepper(Wiring[], int[]). */
+    Stepper(List<Rotor> rotors, int[] posns) {
+        this(rotors.get(0).size(), new boolean[rotors.size()],
+             new long[rotors.size()][(rotors.get(0).size() + 63) >>> 6],
+             posns);
+        for (int k = 0; k < rotors.size(); k++) {
+            Rotor rotor = rotors.get(k);
+            _rotates[k] = rotor.rotates();
+            for (int p = 0; p < _size; p++) {
+                if (rotor.hasNotchAt(p)) {
+                    _notches[k][p >>> 6] |= 1L << p;
+                }
+            }
+        }
+        reset();
+    }
+
+    /** A stepper for a machine with an alphabet of SIZE characters, whose
+     *  ratchets and notches are to be recorded in ROTATES and NOTCHES, and
+     *  whose settings are POSNS. */
+    private Stepper(int size, boolean[] rotates, long[][] notches,
+                    int[] posns) {
+        int n = rotates.length;
+        _size = size;
+        _last = n - 1;
+        _posns = posns;
+        _rotates = rotates;
+        _notches = notches;
+        _due = new int[n];
+        _moving = new int[n];
+        _where = new int[n];
+    }
+
+    /** A stepper for the same rotors as OTHER, with the settings
+     *  POSNS, which must be a copy of OTHER's. */
+    Stepper(Stepper other, int[] posns) {
+        _size = other._size;
+        _last = other._last;
+        _posns = posns;
+        _rotates = other._rotates;
+        _notches = other._notches;
+        _due = other._due.clone();
+        _moving = new int[_due.length];
+        _where = other._where.clone();
+        _count = other._count;
+        _distance = other._distance;
+    }
+
+    /** Recompute everything derived from the current settings. */
+    void reset() {
+        _count = 0;
+        Arrays.fill(_where, -1);
+        for (int i = 1; i < _last; i++) {
+            update(i);
+        }
+        _distance = distance(_last);
+    }
+
+    /** Advance the settings one step.  Returns true iff a rotor other
+     *  than the one in the last slot moved. */
+    boolean advance() {
+        int[] posns = _posns;
+        int count = _count;
+        System.arraycopy(_due, 0, _moving, 0, count);
+        for (int j = 0; j < count; j++) {
+            int i = _moving[j];
+            posns[i] = next(posns[i]);
+        }
+        boolean lastMoved = _last > 0 && _rotates[_last];
+        if (lastMoved) {
+            posns[_last] = next(posns[_last]);
+        }
+        for (int j = 0; j < count; j++) {
+            int i = _moving[j];
+            update(i);
+            update(i - 1);
+        }
+        if (lastMoved) {
+            if (_distance == 0) {
+                _distance = distance(_last);
+                update(_last - 1);
+            } else if (_distance != NEVER && --_distance == 0) {
+                update(_last - 1);
+            }
+        }
+        return count > 0;
+    }
+
+    /** Advance the settings N steps.  Runs of steps in which only the
+     *  last slot moves are taken at once, so the time taken is in
+     *  proportion to the number of steps in which other rotors move. */
+    void skip(long n) {
+        boolean lastMoves = _last > 0 && _rotates[_last];
+        while (n > 0) {
+            if (_count > 0) {
+                advance();
+                n -= 1;
+            } else if (!lastMoves) {
+                return;
+            } else if (_distance == 0) {
+                advance();
+                n -= 1;
+            } else {
+                long run = _distance == NEVER ? n : Math.min(n, _distance);
+                _posns[_last] = (int) ((_posns[_last] + run) % _size);
+                n -= run;
+                if (_distance != NEVER) {
+                    _distance -= (int) run;
+                    if (_distance == 0) {
+                        update(_last - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns true iff the rotor in slot K is at a notch in setting
+     *  POSN. */
+    private boolean notch(int k, int posn) {
+        return (_notches[k][posn >>> 6] & (1L << posn)) != 0;
+    }
+
+    /** Revise whether slot I is due, if it is a slot other than the
+     *  reflector's and the last. */
+    private void update(int i) {
+        if (i < 1 || i >= _last) {
+            return;
+        }
+        boolean due = (_rotates[i - 1] && notch(i, _posns[i]))
+            || (_rotates[i] && notch(i + 1, _posns[i + 1]));
+        if (due && _where[i] < 0) {
+            _where[i] = _count;
+            _due[_count++] = i;
+        } else if (!due && _where[i] >= 0) {
+            int moved = _due[--_count];
+            _due[_where[i]] = moved;
+            _where[moved] = _where[i];
+            _where[i] = -1;
+        }
+    }
+
+    /** Returns the number of steps before the rotor in slot K, moving
+     *  one setting per step, is at a notch, or NEVER if it has none. */
+    private int distance(int k) {
+        int posn = _posns[k];
+        for (int d = 0; d < _size; d++) {
+            if (notch(k, posn)) {
+                return d;
+            }
+            posn = next(posn);
+        }
+        return NEVER;
+    }
+
+    /** Returns the setting following POSN. */
+    private int next(int posn) {
+        posn += 1;
+        return posn == _size ? 0 : posn;
+    }
+
+    /** Distance to a notch of a rotor without one. */
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The number of the last slot. */
+    private final int _last;
+
+    /** The settings, by slot. */
+    private final int[] _posns;
+
+    /** Which slots hold rotors with ratchets. */
+    private final boolean[] _rotates;
+
+    /** Bit P of _notches[K] is set iff the rotor in slot K has a notch at
+     *  setting P. */
+    private final long[][] _notches;
+
+    /** The due slots are _due[0 .. _count - 1], in no particular
+     *  order. */
+    private final int[] _due;
+
+    /** The number of due slots. */
+    private int _count;
+
+    /** _where[I] is the index of slot I in _due, or -1 if it is not
+     *  due. */
+    private final int[] _where;
+
+    /** Scratch copy of the due slots as they were before a step. */
+    private final int[] _moving;
+
+    /** Steps before the rotor in the last slot is at a notch. */
+    private int _distance;
+}
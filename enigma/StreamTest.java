@@ -0,0 +1,663 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for converting streams of data.
+ *  @author Nicholas Moy
+ */
+public class StreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The encoding of ASCII fast path input. */
+    private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+    /** An alphabet of 256 characters, one for each byte. */
+    private static final Alphabet BYTES =
+        new CharacterRange('\u0100', '\u01ff');
+
+    /** Returns the cycle notation of a single cycle through every
+     *  character of BYTES, visiting them in steps of STEP (which must be
+     *  odd). */
+    private static String bigCycle(int step) {
+        StringBuilder ans = new StringBuilder("(");
+        for (int i = 0, c = 0; i < BYTES.size(); i++, c += step) {
+            ans.append(BYTES.toChar(c % BYTES.size()));
+        }
+        return ans.append(")").toString();
+    }
+
+    /** Returns the cycle notation of a reflector over BYTES. */
+    private static String reflector() {
+        StringBuilder ans = new StringBuilder();
+        for (int i = 0; i < BYTES.size(); i += 2) {
+            ans.append('(').append(BYTES.toChar(i))
+                .append(BYTES.toChar(i + 1)).append(')');
+        }
+        return ans.toString();
+    }
+
+    /** Returns a machine over BYTES with three moving rotors, set so
+     *  that each is at a notch within a few characters. */
+    private static Machine byteMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(reflector(), BYTES)));
+        rotors.add(new MovingRotor("X", new Permutation(bigCycle(3), BYTES),
+                                   "\u0102"));
+        rotors.add(new MovingRotor("Y", new Permutation(bigCycle(5), BYTES),
+                                   "\u0101"));
+        rotors.add(new MovingRotor("Z", new Permutation(bigCycle(7), BYTES),
+                                   "\u0104\u0180"));
+        Machine m = new Machine(BYTES, 4, 3, rotors);
+        Main.setUp(m, "* R X Y Z \u0100\u0100\u0100 (\u0141\u01a2)");
+        return m;
+    }
+
+    /** Returns the output of an AsciiConverter using a naval machine on
+     *  INPUT. */
+    private static String ascii(String input) throws IOException {
+        return ascii(input, navalMachine());
+    }
+
+    /** Returns the output of an AsciiConverter using MACHINE on INPUT,
+     *  encoded as UTF-8. */
+    private static String ascii(String input, Machine machine)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AsciiConverter(machine,
+                           new ByteArrayInputStream(input.getBytes(UTF8)),
+                           out)
+            .process();
+        return out.toString(UTF8);
+    }
+
+    /** Returns MSG in groups of five, as Main prints it. */
+    private static String groups(String msg) {
+        StringBuilder ans = new StringBuilder();
+        for (int i = 0; i < msg.length(); i++) {
+            if (i > 0 && i % 5 == 0) {
+                ans.append(' ');
+            }
+            ans.append(msg.charAt(i));
+        }
+        return ans.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    /** Tests that the ASCII fast path handles case, spaces, line endings
+     *  and settings lines as Main does. */
+    @Test
+    public void checkAscii() throws IOException {
+        String nl = System.lineSeparator();
+        assertEquals("SZVGJ HUKSG" + nl + nl + "OZNSW GTDDR WIKBS" + nl
+                     + "YPYCU Q" + nl,
+                     ascii("* B Beta III IV I AXLE (YF) (ZH)\r\n"
+                           + "hello world\r\n\r\nFROM his shoulder\n"
+                           + "* B Beta III IV I AXLE\nabc   def"));
+        assertTrue(AsciiConverter.accepts(UPPER));
+        assertFalse(AsciiConverter.accepts(BYTES));
+        try {
+            ascii("* B Beta III IV I AXLE\nHELLO, WORLD\n");
+            fail("punctuation accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            ascii("HELLO\n");
+            fail("missing settings line accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Tests each policy for characters outside the alphabet, in both
+     *  Machine.convert and the ASCII fast path. */
+    @Test
+    public void checkNormalizer() throws IOException {
+        String settings = "* B Beta III IV I AXLE (YF) (ZH)";
+        String msg = "Hello, World! 42 \u00fcber";
+        Machine m = navalMachine();
+        Main.setUp(m, settings);
+        m.setNormalizer(new Normalizer(UPPER, Normalizer.Policy.PASS, true));
+        String passed = m.convert(msg);
+        assertEquals(",!42\u00fc", passed.replaceAll("[A-Z]", ""));
+        m = navalMachine();
+        m.setNormalizer(new Normalizer(UPPER, Normalizer.Policy.PASS, true));
+        assertEquals(groups(passed) + System.lineSeparator(),
+                     ascii(settings + "\n" + msg, m));
+
+        m = navalMachine();
+        Main.setUp(m, settings);
+        m.setNormalizer(new Normalizer(UPPER, Normalizer.Policy.DROP, true));
+        String dropped = m.convert(msg);
+        assertEquals("HELLOWORLDBER".length(), dropped.length());
+        m = navalMachine();
+        m.setNormalizer(new Normalizer(UPPER, Normalizer.Policy.DROP, true));
+        assertEquals(groups(dropped) + System.lineSeparator(),
+                     ascii(settings + "\n" + msg, m));
+
+        Normalizer strict =
+            new Normalizer(UPPER, Normalizer.Policy.ERROR, false);
+        assertEquals(Normalizer.ERROR, strict.classify('h'));
+        assertEquals(Normalizer.DROP, strict.classify(' '));
+        assertEquals(7, strict.classify('H'));
+        assertEquals(7, new Normalizer(UPPER).classify('h'));
+        assertEquals(Normalizer.ERROR, strict.classify('\u0131'));
+        assertEquals(8, new Normalizer(UPPER).classify('\u0131'));
+        assertEquals(18, new Normalizer(UPPER).classify('\u017f'));
+        assertEquals(Normalizer.ERROR,
+                     new Normalizer(UPPER).classify('\u00e9'));
+    }
+
+    /** Tests that EnigmaWriter and EnigmaReader convert and group text
+     *  as Main does, whatever pieces it arrives in. */
+    @Test
+    public void checkReaderWriter() throws IOException {
+        String settings = "* B Beta III IV I AXLE (YF) (ZH)";
+        String input = "hello world\n\nFROM his shoulder\nHiawatha";
+        String expected = ascii(settings + "\n" + input + "\n");
+        Machine m = navalMachine();
+        Main.setUp(m, settings);
+        StringWriter sink = new StringWriter();
+        EnigmaWriter writer = new EnigmaWriter(sink, m, true);
+        for (int i = 0; i < input.length(); i += 3) {
+            writer.write(input, i, Math.min(3, input.length() - i));
+        }
+        writer.write('\n');
+        writer.flush();
+        assertEquals(expected, sink.toString()
+                     .replace("\n", System.lineSeparator()));
+
+        m = navalMachine();
+        Main.setUp(m, settings);
+        EnigmaReader reader =
+            new EnigmaReader(new StringReader(input + "\n"), m, true);
+        StringBuilder read = new StringBuilder();
+        char[] buf = new char[4];
+        for (int n; (n = reader.read(buf, 0, buf.length)) >= 0;) {
+            read.append(buf, 0, n);
+        }
+        assertEquals(expected, read.toString()
+                     .replace("\n", System.lineSeparator()));
+
+        m = navalMachine();
+        Main.setUp(m, settings);
+        reader = new EnigmaReader(new StringReader("ab cd"), m, false);
+        assertEquals(4, reader.skip(10));
+        assertEquals(-1, reader.read());
+    }
+
+    /** Tests that EnigmaOutputStream converts as BinaryMain does. */
+    @Test
+    public void checkOutputStream() throws IOException {
+        byte[] plain = new byte[30000];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) (i * 13);
+        }
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        EnigmaOutputStream out = new EnigmaOutputStream(sink, byteMachine());
+        out.write(plain, 0, 100);
+        out.write(plain[100]);
+        out.write(plain, 101, plain.length - 101);
+        byte[] expected = plain.clone();
+        byteMachine().convert(expected, 0, expected.length);
+        assertArrayEquals(expected, sink.toByteArray());
+    }
+
+    /** Tests that skipping ahead agrees with stepping. */
+    @Test
+    public void checkSkip() {
+        Machine m = navalMachine();
+        Main.setUp(m, "* B Beta III IV I AUPO");
+        FlatMachine stepped = FlatMachine.of(m);
+        int[] posns = new int[5], expected = new int[5];
+        for (long n : new long[] {0, 1, 5, 25, 26, 27, 700, 17577, 123457}) {
+            FlatMachine skipped = new FlatMachine(stepped);
+            skipped.skip(n);
+            FlatMachine copy = new FlatMachine(stepped);
+            for (long i = 0; i < n; i++) {
+                copy.advance();
+            }
+            assertEquals(msg("skip", "%d steps", n),
+                         Arrays.toString(copy.positions(expected)),
+                         Arrays.toString(skipped.positions(posns)));
+            assertEquals(copy.convert(3), skipped.convert(3));
+        }
+    }
+
+    /** Tests that parallel keystreams agree with sequential ones. */
+    @Test
+    public void checkKeystream() {
+        Machine m = navalMachine();
+        Main.setUp(m, "* B Beta III IV I AXLE (YF) (ZH)");
+        int[] text = new int[100000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (i * 7 + i / 26) % 26;
+        }
+        int[] sequential = Keystream.convert(m, text).toArray();
+        int[] parallel = Keystream.convert(m, text).parallel().toArray();
+        assertArrayEquals(sequential, parallel);
+        assertEquals(m.convert(text[0]), sequential[0]);
+        assertEquals(m.convert(text[1]), sequential[1]);
+
+        Main.setUp(m, "* B Beta III IV I AXLE (YF) (ZH)");
+        List<String> perms = Keystream.permutations(m, 5000).parallel()
+            .map(Arrays::toString).collect(Collectors.toList());
+        assertEquals(5000, perms.size());
+        for (int i = 0; i < perms.size(); i += 1000) {
+            String[] table = perms.get(i).replaceAll("[\\[\\] ]", "")
+                .split(",");
+            assertEquals(sequential[i], Integer.parseInt(table[text[i]]));
+        }
+    }
+
+    /** Tests that binary conversion agrees with converting byte values
+     *  one at a time, and that converting twice restores the data. */
+    @Test
+    public void checkBinary() throws IOException {
+        byte[] plain = new byte[200000];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) (i * 31 + i / 7);
+        }
+        ByteArrayOutputStream cipher = new ByteArrayOutputStream();
+        BinaryMain.convert(byteMachine(),
+                           Channels.newChannel(new ByteArrayInputStream(plain)),
+                           Channels.newChannel(cipher));
+        byte[] encrypted = cipher.toByteArray();
+        assertEquals(plain.length, encrypted.length);
+        Machine m = byteMachine();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(m.convert(plain[i] & 0xff), encrypted[i] & 0xff);
+        }
+        m = byteMachine();
+        m.convert(encrypted, 0, encrypted.length);
+        assertArrayEquals(plain, encrypted);
+    }
+
+    /** Tests that decrypting any range of an indexed encryption from its
+     *  nearest checkpoint gives the same part of the plaintext, across
+     *  changes of settings. */
+    @Test
+    public void checkSeekIndex() throws IOException {
+        StringBuilder input = new StringBuilder(), plain = new StringBuilder();
+        String nl = System.lineSeparator();
+        for (int line = 0; line < 4000; line++) {
+            if (line % 1500 == 0) {
+                input.append(line == 1500 ? "* B Beta I IV III QRST (AB)\n"
+                             : "* B Beta III IV I AXLE (HQ) (EX)\n");
+            }
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < line % 97; i++) {
+                msg.append((char) ('A' + (line * 7 + i * 3) % 26));
+            }
+            input.append(msg).append('\n');
+            plain.append(groups(msg.toString())).append(nl);
+        }
+        File index = File.createTempFile("enigma", ".idx");
+        File cipher = File.createTempFile("enigma", ".txt");
+        index.deleteOnExit();
+        cipher.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(cipher)) {
+            Machine m = navalMachine();
+            SeekIndex seek = new SeekIndex(index.getPath(), m);
+            AsciiConverter converter = new AsciiConverter(
+                m, new ByteArrayInputStream(input.toString().getBytes(UTF8)),
+                out);
+            converter.setIndex(seek);
+            converter.process();
+            seek.close();
+        }
+        assertEquals(plain.length(), cipher.length());
+        List<SeekIndex.Checkpoint> points =
+            SeekIndex.read(index.getPath(), 5, 26);
+        assertTrue(points.size() > plain.length() / SeekIndex.INTERVAL);
+        long[][] ranges = { {0, plain.length()}, {0, 17},
+                            {SeekIndex.INTERVAL + 3, SeekIndex.INTERVAL * 2},
+                            {plain.length() - 1000, plain.length()} };
+        for (long[] range : ranges) {
+            StringWriter out = new StringWriter();
+            try (FileChannel in = new FileInputStream(cipher).getChannel()) {
+                DecryptRange.decrypt(navalMachine(), points, in,
+                                     range[0], range[1], out);
+            }
+            assertEquals(plain.substring((int) range[0], (int) range[1]),
+                         out.toString());
+        }
+    }
+
+    /** Tests that a run interrupted part way through and resumed from
+     *  its last checkpoint writes the same output as an uninterrupted
+     *  run. */
+    @Test
+    public void checkResume() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int line = 0; line < 3000; line++) {
+            if (line % 1000 == 0) {
+                input.append(line == 1000 ? "* B Beta I IV III QRST (AB)\r\n"
+                             : "* B Beta III IV I AXLE (HQ) (EX)\r\n");
+            }
+            for (int i = 0; i < line % 61; i++) {
+                input.append((char) ('a' + (line * 5 + i * 11) % 26));
+            }
+            input.append(line % 3 == 0 ? "\r\n" : "\n");
+        }
+        File in = File.createTempFile("enigma", ".inp");
+        File out = File.createTempFile("enigma", ".out");
+        File saved = File.createTempFile("enigma", ".chk");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        saved.deleteOnExit();
+        Files.write(in.toPath(), input.toString().getBytes(UTF8));
+        String expected = ascii(input.toString());
+
+        Machine m = navalMachine();
+        FileOutputStream output = new FileOutputStream(out);
+        JobCheckpoint checkpoints =
+            new JobCheckpoint(saved.getPath(), m, in.getPath(),
+                              out.getPath(), output);
+        checkpoints.setInterval(5000);
+        FileInputStream failing = new FileInputStream(in) {
+            @Override
+            public int read(byte[] b) throws IOException {
+                if (getChannel().position() > input.length() * 2 / 3) {
+                    throw new IOException("interrupted");
+                }
+                return super.read(b, 0, 1000);
+            }
+        };
+        AsciiConverter converter = new AsciiConverter(m, failing, output);
+        converter.setCheckpoints(checkpoints);
+        try {
+            converter.process();
+            fail("input should have failed");
+        } catch (IOException excp) {
+            output.close();
+            failing.close();
+        }
+
+        JobCheckpoint.State state =
+            JobCheckpoint.read(saved.getPath(), in.getPath(), out.getPath());
+        assertNotNull(state);
+        assertTrue(state.inputOffset() > input.length() / 2);
+        m = navalMachine();
+        try (FileInputStream rest = new FileInputStream(in);
+             FileOutputStream more = new FileOutputStream(out, true)) {
+            rest.getChannel().position(state.inputOffset());
+            more.getChannel().truncate(state.outputOffset());
+            state.restore(m);
+            converter = new AsciiConverter(m, rest, more);
+            converter.resume(state);
+            converter.process();
+        }
+        assertEquals(expected,
+                     new String(Files.readAllBytes(out.toPath()), UTF8));
+    }
+
+    /** Tests that converting the shards of an input separately, each
+     *  with a fresh machine, and concatenating the results gives the
+     *  output of converting it whole. */
+    @Test
+    public void checkShards() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int line = 0; line < 2000; line++) {
+            if (line % 700 == 0) {
+                input.append(line == 700 ? "* B Beta I IV III QRST (AB)\r\n"
+                             : "* B Beta III IV I AXLE (HQ) (EX)\n");
+            }
+            for (int i = 0; i < line % 53; i++) {
+                input.append((char) ('a' + (line * 3 + i * 7) % 26));
+            }
+            input.append(line % 4 == 0 ? "\r\n" : "\n");
+        }
+        byte[] bytes = input.toString().getBytes(UTF8);
+        Machine m = navalMachine();
+        List<ShardMain.Shard> shards =
+            ShardMain.plan(m, new Normalizer(m.getAlphabet()),
+                           new ByteArrayInputStream(bytes), bytes.length, 7);
+        assertEquals(7, shards.size());
+        StringBuilder merged = new StringBuilder();
+        long at = 0;
+        for (ShardMain.Shard shard : shards) {
+            assertEquals(at, shard.from());
+            at = shard.to();
+            String part = new String(bytes, (int) shard.from(),
+                                     (int) (shard.to() - shard.from()),
+                                     UTF8);
+            if (shard.settings() != null) {
+                part = shard.settings() + "\n" + part;
+            }
+            merged.append(ascii(part));
+        }
+        assertEquals(bytes.length, at);
+        assertEquals(ascii(input.toString()), merged.toString());
+    }
+
+    /** Tests that a batch converts each file as Main would, on several
+     *  threads, and reports the files with errors. */
+    @Test
+    public void checkBatch() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        dir.deleteOnExit();
+        new File(dir, "out").deleteOnExit();
+        List<File[]> jobs = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int k = 0; k < 12; k++) {
+            StringBuilder input = new StringBuilder();
+            input.append(k == 5 ? "FROM HIS SHOULDER\n"
+                         : "* B Beta III IV I " + (char) ('A' + k)
+                         + "XLE (HQ) (EX)\n");
+            for (int line = 0; line < 50 * k; line++) {
+                input.append("Hiawatha took the camera\n");
+            }
+            File in = new File(dir, k + ".inp");
+            File out = new File(dir, "out/" + k + ".out");
+            in.deleteOnExit();
+            out.deleteOnExit();
+            Files.write(in.toPath(), input.toString().getBytes(UTF8));
+            jobs.add(new File[] { in, out });
+            expected.add(k == 5 ? null : ascii(input.toString()));
+        }
+        List<BatchMain.Result> results =
+            BatchMain.convertAll(navalMachine(), jobs, 4,
+                                 Normalizer.Policy.ERROR, true);
+        assertEquals(jobs.size(), results.size());
+        for (int k = 0; k < jobs.size(); k++) {
+            assertEquals(expected.get(k) != null, results.get(k).ok());
+            if (expected.get(k) != null) {
+                assertEquals(expected.get(k), new String(
+                    Files.readAllBytes(jobs.get(k)[1].toPath()), UTF8));
+            }
+        }
+        assertTrue(results.get(5).toString()
+                   .endsWith("First line must be setting"));
+
+        Machine broken = new Machine(UPPER, 5, 3,
+                                     navalMachine().getAllRotors()) {
+            @Override
+            Machine copy() {
+                return this;
+            }
+
+            @Override
+            void convert(byte[] data, int from, int to) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            int convert(char[] buf, int from, int to) {
+                throw new IllegalStateException("broken");
+            }
+        };
+        results = BatchMain.convertAll(broken, jobs.subList(1, 3), 1,
+                                       Normalizer.Policy.ERROR, true);
+        assertEquals(2, results.size());
+        for (BatchMain.Result r : results) {
+            assertFalse(r.ok());
+            assertTrue(r.toString().endsWith(
+                "uncaught exception: java.lang.IllegalStateException: broken"));
+        }
+    }
+
+    /** Tests that a machine read back from its MachineTables converts as
+     *  the original does, and that tables from another configuration, or
+     *  damaged tables, are not used. */
+    @Test
+    public void checkTables() throws IOException {
+        File tables = File.createTempFile("enigma", ".tab");
+        tables.deleteOnExit();
+        String input = "* B Beta III IV I AXLE (HQ) (EX)\n"
+            + "Hiawatha took the camera\n"
+            + "* B Beta I IV III QRST (AB)\n"
+            + "From his shoulder\n";
+        MachineTables.write(tables.getPath(), navalMachine(), 100, 42);
+        Machine m = MachineTables.read(tables.getPath(), 100, 42);
+        assertNotNull(m);
+        assertEquals(5, m.numRotors());
+        assertEquals(3, m.numPawls());
+        assertEquals(ascii(input), ascii(input, m));
+        assertNull(MachineTables.read(tables.getPath(), 100, 43));
+        assertNull(MachineTables.read(tables.getPath(), 101, 42));
+
+        File config = File.createTempFile("enigma", ".conf");
+        config.deleteOnExit();
+        Files.write(config.toPath(),
+                    ("A-Z\n 5 3\n"
+                     + " B R (AY) (BR) (CU) (DH) (EQ) (FS) (GL) (IP) (JX) (KN)"
+                     + " (MO) (TZ) (VW)\n"
+                     + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+                     + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+                     + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+                     + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n")
+                    .getBytes(UTF8));
+        String expected = ascii(input, Main.configure(config.getPath()));
+        Machine built = MachineTables.load(config.getPath(),
+                                           tables.getPath());
+        assertEquals(expected, ascii(input, built));
+        long modified = tables.lastModified();
+        Machine mapped = MachineTables.load(config.getPath(),
+                                            tables.getPath());
+        assertEquals(modified, tables.lastModified());
+        assertEquals(expected, ascii(input, mapped));
+
+        try (FileChannel channel =
+                 new FileOutputStream(tables, true).getChannel()) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertNull(MachineTables.read(tables.getPath(), config.length(), 0));
+        assertEquals(expected,
+                     ascii(input, MachineTables.load(config.getPath(),
+                                                     tables.getPath())));
+
+        File blocked = Files.createTempDirectory("enigma").toFile();
+        File inside = new File(blocked, "inside");
+        inside.createNewFile();
+        File temp = new File(blocked.getPath() + "."
+                             + ProcessHandle.current().pid() + ".tmp");
+        assertEquals(expected,
+                     ascii(input, MachineTables.load(config.getPath(),
+                                                     blocked.getPath())));
+        assertFalse(temp.exists());
+        assertTrue(inside.delete() && blocked.delete());
+        File missing = new File(blocked, "tables");
+        assertEquals(expected,
+                     ascii(input, MachineTables.load(config.getPath(),
+                                                     missing.getPath())));
+    }
+
+    /** Tests that an input changing configuration converts each part as
+     *  a run with that configuration alone would, and that ConfigCache
+     *  reads each configuration again only once it has been dropped. */
+    @Test
+    public void checkConfigs() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        dir.deleteOnExit();
+        File digits = new File(dir, "digits.conf");
+        File letters = new File(dir, "letters.conf");
+        File input = new File(dir, "mixed.inp");
+        File output = new File(dir, "mixed.out");
+        for (File f : new File[] { digits, letters, input, output }) {
+            f.deleteOnExit();
+        }
+        Files.write(digits.toPath(),
+                    ("012345\n2 1\nRF R (01) (23) (45)\n"
+                     + "Rot1 M3 (123) (450)\nRot2 M0 (0)\n").getBytes(UTF8));
+        Files.write(letters.toPath(),
+                    ("A-Z\n2 1\nRF R (AB) (CD) (EF) (GH) (IJ) (KL) (MN)"
+                     + " (OP) (QR) (ST) (UV) (WX) (YZ)\n"
+                     + "Rot1 MA (BCDEFGHIJKL) (MNOPQRSTUVWXYZA)\n"
+                     + "Rot2 MA (A)\n").getBytes(UTF8));
+        String[] parts = {
+            "* RF ROT1 2\n3141502\n\n31415\n",
+            "* RF ROT2 A\nAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\n",
+            "* RF ROT1 4\n0123450\n",
+        };
+        File[] configs = { digits, letters, digits };
+        StringBuilder mixed = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int k = 0; k < parts.length; k++) {
+            if (k > 0) {
+                mixed.append("@ ").append(configs[k].getName()).append('\n');
+            }
+            mixed.append(parts[k]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new Main(new ByteArrayInputStream(parts[k].getBytes(UTF8)),
+                     new PrintStream(out, true),
+                     Normalizer.Policy.ERROR, true)
+                .convert(Main.configure(configs[k].getPath()));
+            expected.append(out.toString());
+        }
+        Files.write(input.toPath(), mixed.toString().getBytes(UTF8));
+        Main.main("--configs", "1", digits.getPath(), input.getPath(),
+                  output.getPath());
+        assertEquals(expected.toString(),
+                     new String(Files.readAllBytes(output.toPath())));
+
+        ConfigCache cache = new ConfigCache(2, dir.toPath(),
+                                            Normalizer.Policy.ERROR, true);
+        Machine first = cache.get("digits.conf");
+        cache.get("letters.conf");
+        assertTrue(first == cache.get("digits.conf"));
+        assertEquals(2, cache.loads());
+        cache.get("../" + dir.getName() + "/letters.conf");
+        assertEquals(2, cache.loads());
+        Files.copy(letters.toPath(), new File(dir, "more.conf").toPath());
+        new File(dir, "more.conf").deleteOnExit();
+        cache.get("more.conf");
+        assertEquals(3, cache.loads());
+        assertEquals(2, cache.size());
+        cache.get("letters.conf");
+        assertEquals(3, cache.loads());
+        assertTrue(first != cache.get("digits.conf"));
+        assertEquals(4, cache.loads());
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,191 @@
+package enigma;
+
+/** An Enigma machine reduced to integer lookup tables.  It steps and
+ *  converts exactly as Machine does, but without Permutation's character
+ *  maps, so that the search tools can afford to run it over millions of
+ *  candidate settings.
+ *  @author Nicholas Moy
+ */
+class TableMachine {
+
+    /** A machine whose slots hold the rotors described by ROTORS, the
+     *  first of which must be the reflector, with all rotors at setting 0
+     *  and no plugboard. */
+    TableMachine(Wiring[] rotors) {
+        _wirings = rotors.clone();
+        _size = rotors[0].size();
+        int n = rotors.length;
+        _forward = new int[n][];
+        _backward = new int[n][];
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            _forward[i] = rotors[i].forward();
+            _backward[i] = rotors[i].backward();
+            _notches[i] = rotors[i].notches();
+            _rotates[i] = rotors[i].rotates();
+        }
+        _posns = new int[n];
+        _core = new int[_size];
+        _plugboard = new int[_size];
+        for (int i = 0; i < _size; i++) {
+            _plugboard[i] = i;
+        }
+    }
+
+    /** Returns a machine with the rotors, settings and plugboard that
+     *  MACHINE currently has. */
+    static TableMachine of(Machine machine) {
+        TableMachine ans = new TableMachine(Wiring.of(machine.getRotors()));
+        for (int k = 1; k < ans.numRotors(); k++) {
+            ans.setPosition(k, machine.getRotors().get(k).setting());
+        }
+        ans.setPlugboard(Wiring.table(machine.getPlugboard()));
+        return ans;
+    }
+
+    /** Returns the number of rotor slots I have. */
+    int numRotors() {
+        return _posns.length;
+    }
+
+    /** Returns the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the wiring in slot K (0 is the reflector). */
+    Wiring wiring(int k) {
+        return _wirings[k];
+    }
+
+    /** Returns the setting of the rotor in slot K. */
+    int position(int k) {
+        return _posns[k];
+    }
+
+    /** Set the rotor in slot K to setting POSN. */
+    void setPosition(int k, int posn) {
+        _posns[k] = posn;
+        _coreValid = false;
+    }
+
+    /** Set the rotors in slots 1 .. numRotors() - 1 to POSNS[1 ..]. */
+    void setPositions(int[] posns) {
+        System.arraycopy(posns, 1, _posns, 1, _posns.length - 1);
+        _coreValid = false;
+    }
+
+    /** Copy my rotor settings into POSNS, which is returned. */
+    int[] positions(int[] posns) {
+        System.arraycopy(_posns, 0, posns, 0, _posns.length);
+        return posns;
+    }
+
+    /** Set my plugboard to the table PLUGBOARD (not copied). */
+    void setPlugboard(int[] plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Advances my rotors as Machine advances its rotors. */
+    void advance() {
+        int last = _posns.length - 1;
+        for (int i = 1; i < last; i++) {
+            if ((_rotates[i - 1] && _notches[i][_posns[i]])
+                || (_rotates[i] && _notches[i + 1][_posns[i + 1]])) {
+                _posns[i] = next(_posns[i]);
+                _coreValid = false;
+            }
+        }
+        if (_rotates[last]) {
+            _posns[last] = next(_posns[last]);
+        }
+    }
+
+    /** Returns the conversion of C by the current rotor settings,
+     *  without advancing. */
+    int map(int c) {
+        int last = _posns.length - 1;
+        c = _plugboard[c];
+        c = through(_forward[last], _posns[last], c);
+        if (last > 0) {
+            if (!_coreValid) {
+                fillCore();
+            }
+            c = through(_backward[last], _posns[last], _core[c]);
+        }
+        return _plugboard[c];
+    }
+
+    /** Set _core to the combined permutation of the rotors in all but the
+     *  last slot, which change only when a rotor other than the
+     *  rightmost one moves. */
+    private void fillCore() {
+        int last = _posns.length - 1;
+        for (int c0 = 0; c0 < _size; c0++) {
+            int c = c0;
+            for (int i = last - 1; i >= 0; i--) {
+                c = through(_forward[i], _posns[i], c);
+            }
+            for (int i = 1; i < last; i++) {
+                c = through(_backward[i], _posns[i], c);
+            }
+            _core[c0] = c;
+        }
+        _coreValid = true;
+    }
+
+    /** Returns the result of converting C, after first advancing the
+     *  machine. */
+    int convert(int c) {
+        advance();
+        return map(c);
+    }
+
+    /** Returns the setting following POSN. */
+    private int next(int posn) {
+        posn += 1;
+        return posn == _size ? 0 : posn;
+    }
+
+    /** Returns the result of passing C through the rotor table TABLE
+     *  when that rotor is at setting POSN. */
+    private int through(int[] table, int posn, int c) {
+        int k = c + posn;
+        if (k >= _size) {
+            k -= _size;
+        }
+        int r = table[k] - posn;
+        return r < 0 ? r + _size : r;
+    }
+
+    /** The wirings in my slots. */
+    private final Wiring[] _wirings;
+
+    /** The size of my alphabet. */
+    private final int _size;
+
+    /** Forward tables of my rotors, by slot. */
+    private final int[][] _forward;
+
+    /** Inverse tables of my rotors, by slot. */
+    private final int[][] _backward;
+
+    /** Notch tables of my rotors, by slot. */
+    private final boolean[][] _notches;
+
+    /** Which of my slots hold rotors with ratchets. */
+    private final boolean[] _rotates;
+
+    /** Current settings of my rotors, by slot. */
+    private final int[] _posns;
+
+    /** My plugboard table. */
+    private int[] _plugboard;
+
+    /** Combined permutation of all but my last slot, when _coreValid. */
+    private final int[] _core;
+
+    /** True iff _core reflects the current settings. */
+    private boolean _coreValid;
+}
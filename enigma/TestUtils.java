@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -18,6 +19,70 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** A settings line for navalMachine(). */
+    static final String NAVAL_SETTINGS = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** Returns a machine with NUMROTORS slots, PAWLS of them moving,
+     *  whose available rotors are the naval rotors NAMES in the A
+     *  setting, not yet set up. */
+    static Machine navalMachine(int numRotors, int pawls, String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, numRotors, pawls, rotors);
+    }
+
+    /** Returns a machine with the naval rotors B, Beta, III, IV and I
+     *  that has not yet been set up. */
+    static Machine navalMachine() {
+        return navalMachine(5, 3, "B", "Beta", "III", "IV", "I");
+    }
+
+    /** Returns navalMachine() set up by the settings line SETTINGS. */
+    static Machine navalMachine(String settings) {
+        Machine m = navalMachine();
+        Main.setUp(m, settings);
+        return m;
+    }
+
+    /** Returns a small machine with alphabet A-F, two moving rotors and
+     *  a choice of two reflectors, not yet set up. */
+    static Machine smallMachine() {
+        Alphabet alpha = new CharacterRange('A', 'F');
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R1",
+                new Permutation("(AB) (CD) (EF)", alpha)));
+        rotors.add(new Reflector("R2",
+                new Permutation("(AF) (BE) (CD)", alpha)));
+        rotors.add(new MovingRotor("X",
+                new Permutation("(ACFB) (DE)", alpha), "C"));
+        rotors.add(new MovingRotor("Y",
+                new Permutation("(AE) (BDCF)", alpha), "A"));
+        return new Machine(alpha, 3, 2, rotors);
+    }
+
+    /** The notches of the moving naval rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -18,7 +18,12 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          RotorSearchTest.class, CribSearchTest.class,
+                          PlugboardSearchTest.class, StreamTest.class,
+                          MachineTest.class, CycleCatalogTest.class,
+                          FlatMachineTest.class, CompiledMachineTest.class,
+                          BatchMachineTest.class);
     }
 
     private ArrayList<Rotor> rotorSet;
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.List;
+
+/** The wiring of a single rotor flattened into integer lookup tables,
+ *  for tools that must convert far more characters than Permutation's
+ *  character maps can manage.
+ *  @author Nicholas Moy
+ */
+class Wiring {
+
+    /** The wiring of ROTOR, whose setting is left unchanged. */
+    Wiring(Rotor rotor) {
+        Permutation perm = rotor.permutation();
+        _rotor = rotor;
+        _forward = table(perm);
+        _backward = new int[perm.size()];
+        _notches = new boolean[perm.size()];
+        for (int i = 0; i < perm.size(); i++) {
+            _backward[i] = perm.invert(i);
+            _notches[i] = rotor.hasNotchAt(i);
+        }
+    }
+
+    /** Returns the table of PERM, whose entry I is PERM.permute(I). */
+    static int[] table(Permutation perm) {
+        int[] ans = new int[perm.size()];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = perm.permute(i);
+        }
+        return ans;
+    }
+
+    /** Returns the wirings of ROTORS, in order. */
+    static Wiring[] of(List<Rotor> rotors) {
+        Wiring[] ans = new Wiring[rotors.size()];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = new Wiring(rotors.get(i));
+        }
+        return ans;
+    }
+
+    /** Returns the rotor I describe. */
+    Rotor rotor() {
+        return _rotor;
+    }
+
+    /** Returns my rotor's name. */
+    String name() {
+        return _rotor.name();
+    }
+
+    /** Returns the size of my alphabet. */
+    int size() {
+        return _forward.length;
+    }
+
+    /** Returns true iff my rotor has a ratchet. */
+    boolean rotates() {
+        return _rotor.rotates();
+    }
+
+    /** Returns true iff my rotor is a reflector. */
+    boolean reflecting() {
+        return _rotor.reflecting();
+    }
+
+    /** Returns my forward table, indexed by contact at setting 0. */
+    int[] forward() {
+        return _forward;
+    }
+
+    /** Returns my inverse table, indexed by contact at setting 0. */
+    int[] backward() {
+        return _backward;
+    }
+
+    /** Returns my notch table, indexed by setting. */
+    boolean[] notches() {
+        return _notches;
+    }
+
+    /** The rotor I describe. */
+    private final Rotor _rotor;
+
+    /** Forward permutation at setting 0. */
+    private final int[] _forward;
+
+    /** Inverse permutation at setting 0. */
+    private final int[] _backward;
+
+    /** True at each setting where the rotor is at a notch. */
+    private final boolean[] _notches;
+}